@@ -0,0 +1,150 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import models.GameBoard;
+import models.Move;
+import models.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.Database;
+
+/** The persistence path of {@link Database} on a SQLite file of a
+ * temporary directory, already holding rows moves of other games.
+ * commit "autocommit" gives every move its own transaction
+ * (db.batchSize=1) and "batched" lets the journal group the moves
+ * of concurrent games into one (db.batchSize=256); both acknowledge
+ * a move once it is committed. journal is db.journalMode: WAL or
+ * DELETE, the rollback journal. For example
+ * -Djmh.args="Database.addMove -p rows=0 -t 8".
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DatabaseBenchmark {
+
+  // a full 15x15 board
+  private static final int GAME_MOVES = 225;
+
+  @Param({"0", "100000"})
+  private int rows;
+
+  @Param({"autocommit", "batched"})
+  private String commit;
+
+  @Param({"WAL", "DELETE"})
+  private String journal;
+
+  private Path dir;
+
+  private Database db;
+
+  private final Player p1 = new Player('X', 1);
+
+  private final Player p2 = new Player('O', 2);
+
+  private final AtomicInteger games = new AtomicInteger();
+
+  /** One game per benchmark thread, as every request thread moves in its own game. */
+  @State(Scope.Thread)
+  public static class Game {
+
+    private String gameId;
+
+    private int moves;
+
+    /**.
+     * @param bench the shared database
+     */
+    @Setup
+    public void setUp(DatabaseBenchmark bench) {
+      this.gameId = "bench" + bench.games.incrementAndGet();
+    }
+  }
+
+  /**.
+   * @throws IOException if the temporary directory cannot be made
+   */
+  @Setup
+  public void setUp() throws IOException {
+    this.dir = Files.createTempDirectory("db-bench");
+    System.setProperty("db.file", this.dir.resolve("bench.db").toString());
+    System.setProperty("db.snapshots", this.dir.resolve("snapshots").toString());
+    System.setProperty("db.journalMode", this.journal);
+
+    // filled without waiting for each commit; gameIds waits for all of them
+    Database fill = new Database(false, 256, 0);
+    fill.createTable();
+    for (int i = 0; i < this.rows; i++) {
+      int cell = i % GAME_MOVES;
+      fill.addMove("fill" + i / GAME_MOVES, new Move(cell % 2 == 0 ? this.p1 : this.p2,
+          cell / 15, cell % 15));
+    }
+    // the game read back by recover
+    fill.addPlayers("recover", this.p1, 15, 5);
+    fill.addPlayers("recover", this.p2, 15, 5);
+    for (int cell = 0; cell < GAME_MOVES; cell++) {
+      fill.addMove("recover", new Move(cell % 2 == 0 ? this.p1 : this.p2,
+          cell / 15, cell % 15));
+    }
+    fill.gameIds();
+    fill.close();
+
+    this.db = new Database(true, "batched".equals(this.commit) ? 256 : 1, 0);
+  }
+
+  /**.
+   * @throws IOException if the temporary directory cannot be removed
+   */
+  @TearDown
+  public void tearDown() throws IOException {
+    this.db.close();
+    try (Stream<Path> files = Files.walk(this.dir)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  /** persist a move of a game and wait for its commit, from
+   * concurrent games so that the journal has moves to group.
+   */
+  @Benchmark
+  @Threads(4)
+  public void addMove(Game game) {
+    int cell = game.moves++ % GAME_MOVES;
+    this.db.addMove(game.gameId, new Move(cell % 2 == 0 ? this.p1 : this.p2,
+        cell / 15, cell % 15));
+  }
+
+  /** persist a player, committed on its own.*/
+  @Benchmark
+  public void addPlayers() {
+    this.db.addPlayers("players", this.p1, 15, 5);
+  }
+
+  /** read back a game of a full board, with no snapshot.*/
+  @Benchmark
+  public GameBoard recover() {
+    GameBoard board = new GameBoard();
+    this.db.recover("recover", board);
+    return board;
+  }
+}
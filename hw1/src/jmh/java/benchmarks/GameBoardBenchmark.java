@@ -0,0 +1,167 @@
+package benchmarks;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import models.GameBoard;
+import models.Move;
+import models.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** The game engine on boards of several sizes. Every benchmark thread
+ * plays its own board, as every game of the server has its own lock,
+ * so running with more threads (-t, or {@link ScalingRunner}) shows
+ * how the engine scales over independent games.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GameBoardBenchmark {
+
+  @Param({"3", "15", "64"})
+  private int size;
+
+  private final Player p1 = new Player('X', 1);
+
+  private final Player p2 = new Player('O', 2);
+
+  // half full, nobody has won
+  private GameBoard board;
+
+  // moves tried by validMove, on empty and on occupied cells
+  private Move[] moves;
+
+  // empty cells of the board, as row * size + col
+  private int[] empty;
+
+  private int next;
+
+  private SplittableRandom random;
+
+  /**.
+   * fill half of the board without completing a line
+   */
+  @Setup
+  public void setUp() {
+    this.random = new SplittableRandom(this.size);
+    this.board = this.newBoard();
+    int cells = this.size * this.size;
+    int[] order = this.shuffledCells();
+    int placed = 0;
+    for (int i = 0; i < cells && placed < cells / 2; i++) {
+      int row = order[i] / this.size;
+      int col = order[i] % this.size;
+      Player player = this.board.getTurn() == 1 ? this.p1 : this.p2;
+      this.board.makeMovement(new Move(player, row, col));
+      if (this.board.getWinner() != 0) {
+        // keep the game open
+        this.board = this.replay(order, i);
+        continue;
+      }
+      placed++;
+    }
+    this.empty = new int[cells - this.board.getPieceCount()];
+    int count = 0;
+    for (int cell = 0; cell < cells; cell++) {
+      if (this.board.getPiece(cell / this.size, cell % this.size) == '\u0000') {
+        this.empty[count++] = cell;
+      }
+    }
+    this.moves = new Move[64];
+    for (int i = 0; i < this.moves.length; i++) {
+      int cell = this.random.nextInt(cells);
+      Player player = this.board.getTurn() == 1 ? this.p1 : this.p2;
+      this.moves[i] = new Move(player, cell / this.size, cell % this.size);
+    }
+  }
+
+  /** check a move, on a free or an occupied cell.*/
+  @Benchmark
+  public String validMove() {
+    Move move = this.moves[this.next++ & (this.moves.length - 1)];
+    return this.board.validMove(move);
+  }
+
+  /** make a move on a free cell and take it back. A move that wins
+   * leaves the winner set, which only skips the draw check after it.
+   */
+  @Benchmark
+  public int makeMovement() {
+    int cell = this.empty[this.next++ % this.empty.length];
+    int row = cell / this.size;
+    int col = cell % this.size;
+    Player player = this.board.getTurn() == 1 ? this.p1 : this.p2;
+    this.board.makeMovement(new Move(player, row, col));
+    int winner = this.board.getWinner();
+    this.board.setPiece(row, col, '\u0000');
+    return winner;
+  }
+
+  /** look for a winner and a draw over the whole board.*/
+  @Benchmark
+  public int update() {
+    this.board.update();
+    return this.board.getWinner();
+  }
+
+  /** play a whole game of random moves on an empty board.*/
+  @Benchmark
+  public int playout() {
+    GameBoard game = this.newBoard();
+    int[] order = this.shuffledCells();
+    for (int i = 0; i < order.length && game.getWinner() == 0 && !game.isGameDraw(); i++) {
+      Player player = game.getTurn() == 1 ? this.p1 : this.p2;
+      Move move = new Move(player, order[i] / this.size, order[i] % this.size);
+      if (game.validMove(move).isEmpty()) {
+        game.makeMovement(move);
+      }
+    }
+    return game.getWinner();
+  }
+
+  private GameBoard newBoard() {
+    GameBoard game = new GameBoard(this.size, Math.min(this.size, 5));
+    game.setPlayer1(this.p1);
+    game.setPlayer2(this.p2);
+    return game;
+  }
+
+  private int[] shuffledCells() {
+    int[] cells = new int[this.size * this.size];
+    for (int i = 0; i < cells.length; i++) {
+      cells[i] = i;
+    }
+    for (int i = cells.length - 1; i > 0; i--) {
+      int j = this.random.nextInt(i + 1);
+      int swap = cells[i];
+      cells[i] = cells[j];
+      cells[j] = swap;
+    }
+    return cells;
+  }
+
+  // the board with the moves before order[skip], and order[skip] left out
+  private GameBoard replay(int[] order, int skip) {
+    GameBoard game = this.newBoard();
+    for (int i = 0; i < skip; i++) {
+      char piece = this.board.getPiece(order[i] / this.size, order[i] % this.size);
+      if (piece != '\u0000') {
+        game.setPiece(order[i] / this.size, order[i] % this.size, piece);
+      }
+    }
+    game.setTurn(this.board.getTurn() == 1 ? 2 : 1);
+    return game;
+  }
+}
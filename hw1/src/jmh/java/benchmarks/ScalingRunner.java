@@ -0,0 +1,93 @@
+package benchmarks;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Runs benchmarks once per thread count, 1, 2, 4 and so on up to the
+ * processors, and prints the score of every run side by side, in the
+ * unit of its benchmark, with the throughput over every thread:
+ * mvn -P jmh test-compile exec:exec -Djmh.main=benchmarks.ScalingRunner
+ *     -Djmh.args=GameBoardBenchmark
+ */
+public final class ScalingRunner {
+
+  private ScalingRunner() {
+  }
+
+  /**.
+   * @param args regular expression of the benchmarks, all of
+   *        GameBoardBenchmark if none
+   * @throws RunnerException if a benchmark fails
+   */
+  public static void main(String[] args) throws RunnerException {
+    String include = args.length > 0 ? args[0] : GameBoardBenchmark.class.getSimpleName();
+    TreeSet<Integer> counts = new TreeSet<>();
+    int processors = Runtime.getRuntime().availableProcessors();
+    for (int threads = 1; threads < processors; threads *= 2) {
+      counts.add(threads);
+    }
+    counts.add(processors);
+
+    StringBuilder report = new StringBuilder();
+    for (int threads : counts) {
+      Options options = new OptionsBuilder()
+          .include(include)
+          .threads(threads)
+          .build();
+      Collection<RunResult> results = new Runner(options).run();
+      for (RunResult result : results) {
+        StringBuilder params = new StringBuilder();
+        for (String key : result.getParams().getParamsKeys()) {
+          params.append(key).append('=').append(result.getParams().getParam(key)).append(' ');
+        }
+        double score = result.getPrimaryResult().getScore();
+        String unit = result.getPrimaryResult().getScoreUnit();
+        report.append(String.format("%-50s %-30s threads=%-3d %12.1f %-8s %14.0f ops/s%n",
+            result.getParams().getBenchmark(), params.toString().trim(),
+            threads, score, unit, perSecond(score, unit, threads)));
+      }
+    }
+    System.out.print(report);
+  }
+
+  /**.
+   * @param score primary score of a run
+   * @param unit its unit, time per operation of one thread
+   *        (for example us/op) or operations of every thread per time
+   *        (for example ops/ms)
+   * @param threads threads of the run
+   * @return operations per second of every thread, NaN if the unit is unknown
+   */
+  private static double perSecond(double score, String unit, int threads) {
+    if (unit.endsWith("/op")) {
+      return threads / (score * seconds(unit.substring(0, unit.length() - 3)));
+    }
+    if (unit.startsWith("ops/")) {
+      return score / seconds(unit.substring(4));
+    }
+    return Double.NaN;
+  }
+
+  // seconds in one time unit, as JMH labels it
+  private static double seconds(String label) {
+    switch (label) {
+      case "ns":
+        return 1e-9;
+      case "us":
+        return 1e-6;
+      case "ms":
+        return 1e-3;
+      case "s":
+        return 1;
+      case "min":
+        return 60;
+      default:
+        return Double.NaN;
+    }
+  }
+}
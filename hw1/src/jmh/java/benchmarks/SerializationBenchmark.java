@@ -0,0 +1,90 @@
+package benchmarks;
+
+import com.google.gson.Gson;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import models.GameBoard;
+import models.JsonCodec;
+import models.Message;
+import models.Move;
+import models.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Gson against {@link JsonCodec} for the JSON of a board and of a
+ * move response, both ending as the UTF-8 bytes sent to the client.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+  @Param({"3", "15"})
+  private int size;
+
+  private final Gson gson = new Gson();
+
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+  private GameBoard board;
+
+  private Message message;
+
+  /**.
+   * a board with a few moves of each player
+   */
+  @Setup
+  public void setUp() {
+    this.board = new GameBoard(this.size, Math.min(this.size, 5));
+    Player p1 = new Player('X', 1);
+    Player p2 = new Player('O', 2);
+    this.board.setPlayer1(p1);
+    this.board.setPlayer2(p2);
+    for (int i = 0; i < this.size - 1; i++) {
+      this.board.makeMovement(new Move(i % 2 == 0 ? p1 : p2, i, (i * 7) % this.size));
+    }
+    this.message = new Message(false, 100, "This cell has been occupied");
+  }
+
+  /** the board through Gson, as before the codecs.*/
+  @Benchmark
+  public byte[] boardGson() {
+    return this.gson.toJson(this.board).getBytes(StandardCharsets.UTF_8);
+  }
+
+  /** the board through the codec.*/
+  @Benchmark
+  public byte[] boardCodec() throws IOException {
+    this.out.reset();
+    JsonCodec.writeBoard(this.board, this.out);
+    return this.out.toByteArray();
+  }
+
+  /** a move response through Gson.*/
+  @Benchmark
+  public byte[] messageGson() {
+    return this.gson.toJson(this.message).getBytes(StandardCharsets.UTF_8);
+  }
+
+  /** a move response through the codec.*/
+  @Benchmark
+  public byte[] messageCodec() throws IOException {
+    this.out.reset();
+    JsonCodec.writeMessage(this.message, this.out);
+    return this.out.toByteArray();
+  }
+}
@@ -0,0 +1,451 @@
+package controllers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import models.GameBoard;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.GameStore;
+import utils.Metrics;
+
+/** Holds every game hosted by the server, keyed by game id.
+ * Each game has its own lock, so moves in different games
+ * never wait for each other, and moves in one game are applied
+ * one at a time, in the order they took the lock.
+ * Reads of a board unchanged since it was last read do not take
+ * the lock: they get the JSON encoded then. The first read after
+ * a change, or of a game not loaded yet, takes the lock to encode
+ * it, waiting for the load if needed, see {@link #read}.
+ * Games found in the store at startup are recovered in the
+ * background; opening one waits for its own recovery only.
+ * At most maxGames games stay in memory: past that, the least
+ * recently used are snapshotted and evicted, and loaded again
+ * from the store when a request touches them.
+ */
+public class GameRegistry {
+
+  private static final Logger LOG = LoggerFactory.getLogger(GameRegistry.class);
+
+  /** games untouched for this long are evicted. */
+  public static final long DEFAULT_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+  /** finished games untouched for this long are evicted. */
+  public static final long DEFAULT_FINISHED_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  /** games held in memory, set by the system property registry.maxGames. */
+  public static final int DEFAULT_MAX_GAMES = Integer.getInteger("registry.maxGames", 10000);
+
+  private static final long SWEEP_SECONDS = 30;
+
+  // 0 turns the periodic snapshots off
+  private static final long SNAPSHOT_SECONDS = Long.getLong("snapshot.seconds", 60);
+
+  private static final Pattern GAME_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+  private static final Metrics.Timer ENCODE = Metrics.registry().timer(
+      "tictactoe_json_encode_seconds", "Time to encode the JSON of a board.");
+
+  private final ConcurrentHashMap<String, Entry> games = new ConcurrentHashMap<>();
+
+  private final GameStore db;
+
+  private final long idleMillis;
+
+  private final long finishedMillis;
+
+  private final int maxGames;
+
+  // a trim is queued on the sweeper
+  private final AtomicBoolean trimming = new AtomicBoolean();
+
+  private final ScheduledExecutorService sweeper;
+
+  private final ForkJoinPool recovery = new ForkJoinPool(
+      Integer.getInteger("recovery.threads", Runtime.getRuntime().availableProcessors()));
+
+  /** One game of the registry, guarded by its own lock. */
+  public static final class Entry {
+
+    private final String gameId;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private GameBoard board = new GameBoard();
+
+    private boolean loaded = false;
+
+    private boolean evicted = false;
+
+    // background recovery started by preload, null if none
+    private CompletableFuture<GameBoard> loading;
+
+    // encoded board as of the last unlock, null if the board
+    // was not encoded since its last change or is not loaded
+    private volatile GameBoard.Snapshot published;
+
+    // board version of the last snapshot, -1 if none
+    private long snapshotVersion = -1;
+
+    private volatile long lastAccess = System.currentTimeMillis();
+
+    // lastAccess when the trim started, so the order cannot change while sorting
+    private long trimStamp;
+
+    private Entry(String gameId) {
+      this.gameId = gameId;
+    }
+
+    /** get the id of the game.*/
+    public String getGameId() {
+      return this.gameId;
+    }
+
+    /** get the board. Only valid while the entry is open.*/
+    public GameBoard getBoard() {
+      return this.board;
+    }
+
+    /** .
+     * @param board the board replacing the current one
+     */
+    public void setBoard(GameBoard board) {
+      this.board = board;
+      this.snapshotVersion = -1;
+    }
+
+    /** release the entry returned by {@link GameRegistry#open}.*/
+    public void unlock() {
+      this.lastAccess = System.currentTimeMillis();
+      // encoded by the first read, not by every change
+      this.published = this.loaded && this.board.hasSnapshot() ? this.board.snapshot() : null;
+      this.lock.unlock();
+    }
+
+    private boolean isFinished() {
+      return this.board.getWinner() != 0 || this.board.isGameDraw();
+    }
+  }
+
+  /** .
+   * @param db store used to load games that are not in memory
+   */
+  public GameRegistry(GameStore db) {
+    this(db, DEFAULT_IDLE_MILLIS, DEFAULT_FINISHED_MILLIS, DEFAULT_MAX_GAMES);
+  }
+
+  /** .
+   * @param db store used to load games that are not in memory
+   * @param idleMillis idle time before a game is evicted
+   * @param finishedMillis idle time before a finished game is evicted
+   * @param maxGames games held in memory before the least recently used are evicted
+   */
+  public GameRegistry(GameStore db, long idleMillis, long finishedMillis, int maxGames) {
+    this.db = db;
+    this.idleMillis = idleMillis;
+    this.finishedMillis = finishedMillis;
+    this.maxGames = Math.max(1, maxGames);
+    this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "game-registry-sweeper");
+      t.setDaemon(true);
+      return t;
+    });
+    this.sweeper.scheduleWithFixedDelay(guarded("evict the idle games", this::evictIdle),
+        SWEEP_SECONDS, SWEEP_SECONDS, TimeUnit.SECONDS);
+    if (SNAPSHOT_SECONDS > 0) {
+      this.sweeper.scheduleWithFixedDelay(guarded("snapshot the games", this::snapshotAll),
+          SNAPSHOT_SECONDS, SNAPSHOT_SECONDS, TimeUnit.SECONDS);
+    }
+  }
+
+  // an exception thrown by a periodic task would cancel its later runs
+  private static Runnable guarded(String what, Runnable task) {
+    return () -> {
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        LOG.error("Cannot {}", what, e);
+      }
+    };
+  }
+
+  /** .
+   * @param gameId the game to open
+   * @return the locked entry of the game, loaded from the
+   *         database the first time it is opened.
+   *         The caller must call {@link Entry#unlock()}.
+   */
+  public Entry open(String gameId) {
+    while (true) {
+      Entry entry = this.games.computeIfAbsent(gameId, Entry::new);
+      this.checkCapacity();
+      entry.lock.lock();
+      if (!entry.evicted) {
+        if (!entry.loaded) {
+          try {
+            this.load(entry);
+          } catch (RuntimeException e) {
+            // the game stays unloaded, the next open recovers it again
+            // from an empty board
+            entry.setBoard(new GameBoard());
+            entry.lock.unlock();
+            throw e;
+          }
+        }
+        return entry;
+      }
+      // evicted while we were waiting, retry with a fresh entry
+      entry.lock.unlock();
+    }
+  }
+
+  /** .
+   * @param gameId the game to read
+   * @return the board of the game as of its last change, without
+   *         waiting for a move in progress once it was read; the first
+   *         read after a change takes the lock to encode it, and the
+   *         first read of a game that is not loaded yet waits for it to load
+   */
+  public GameBoard.Snapshot read(String gameId) {
+    Entry entry = this.games.get(gameId);
+    GameBoard.Snapshot published = entry == null ? null : entry.published;
+    if (published != null) {
+      entry.lastAccess = System.currentTimeMillis();
+      return published;
+    }
+    entry = this.open(gameId);
+    try {
+      return snapshot(entry.board);
+    } finally {
+      entry.unlock();
+    }
+  }
+
+  /** .
+   * @param board a board locked by the caller
+   * @return the snapshot of the board; encoding it, unless
+   *         it is cached, is timed
+   */
+  static GameBoard.Snapshot snapshot(GameBoard board) {
+    if (board.hasSnapshot()) {
+      return board.snapshot();
+    }
+    long start = System.nanoTime();
+    GameBoard.Snapshot snapshot = board.snapshot();
+    ENCODE.recordSince(start);
+    return snapshot;
+  }
+
+  /** .
+   * @param gameIds games to recover in the background, each on its own
+   *        task of the recovery pool; games already in memory are skipped
+   */
+  public void preload(Collection<String> gameIds) {
+    for (String gameId : gameIds) {
+      if (this.games.size() >= this.maxGames) {
+        // the others are loaded when they are opened
+        break;
+      }
+      if (!isValidId(gameId)) {
+        continue;
+      }
+      Entry entry = this.games.computeIfAbsent(gameId, Entry::new);
+      entry.lock.lock();
+      try {
+        if (!entry.loaded && !entry.evicted && entry.loading == null) {
+          entry.loading = CompletableFuture.supplyAsync(() -> {
+            GameBoard board = new GameBoard();
+            this.db.recover(gameId, board);
+            return board;
+          }, this.recovery);
+        }
+      } finally {
+        entry.lock.unlock();
+      }
+    }
+  }
+
+  // called with the entry locked
+  private void load(Entry entry) {
+    if (entry.loading != null) {
+      try {
+        entry.setBoard(entry.loading.join());
+        entry.loading = null;
+        entry.loaded = true;
+        return;
+      } catch (CompletionException e) {
+        LOG.error("Cannot recover game={}", entry.gameId, e.getCause());
+        entry.loading = null;
+        entry.setBoard(new GameBoard());
+      }
+    }
+    this.db.recover(entry.gameId, entry.board);
+    entry.loaded = true;
+  }
+
+  /** .
+   * @param gameId the game to reset
+   * @return the locked entry holding a brand new board.
+   *         The caller must call {@link Entry#unlock()}.
+   */
+  public Entry reset(String gameId) {
+    while (true) {
+      Entry entry = this.games.computeIfAbsent(gameId, Entry::new);
+      this.checkCapacity();
+      entry.lock.lock();
+      if (!entry.evicted) {
+        try {
+          this.db.clearGame(gameId);
+        } catch (RuntimeException e) {
+          // the game is left as it was
+          entry.lock.unlock();
+          throw e;
+        }
+        entry.setBoard(new GameBoard());
+        // a pending recovery is obsolete, its board is dropped
+        entry.loading = null;
+        entry.loaded = true;
+        return entry;
+      }
+      entry.lock.unlock();
+    }
+  }
+
+  /** .
+   * evict finished and idle games.
+   * Games in use are skipped and checked at the next sweep.
+   */
+  public void evictIdle() {
+    long now = System.currentTimeMillis();
+    for (Entry entry : this.games.values()) {
+      long idle = now - entry.lastAccess;
+      if (idle < this.finishedMillis || !entry.lock.tryLock()) {
+        continue;
+      }
+      try {
+        if (idle >= this.idleMillis || (entry.loaded && entry.isFinished())) {
+          this.evict(entry);
+        }
+      } finally {
+        entry.lock.unlock();
+      }
+    }
+  }
+
+  /** .
+   * evict the least recently used games until a tenth of the room
+   * is free again, so that trims stay rare.
+   * Games in use are skipped.
+   */
+  public void trim() {
+    this.trimming.set(false);
+    int excess = this.games.size() - (this.maxGames - this.maxGames / 10);
+    if (excess <= 0) {
+      return;
+    }
+    List<Entry> entries = new ArrayList<>(this.games.values());
+    for (Entry entry : entries) {
+      entry.trimStamp = entry.lastAccess;
+    }
+    entries.sort(Comparator.comparingLong(entry -> entry.trimStamp));
+    for (Entry entry : entries) {
+      if (excess <= 0) {
+        break;
+      }
+      if (!entry.lock.tryLock()) {
+        continue;
+      }
+      try {
+        if (!entry.evicted) {
+          this.evict(entry);
+          excess--;
+        }
+      } finally {
+        entry.lock.unlock();
+      }
+    }
+  }
+
+  // queue a trim once the registry is over capacity
+  private void checkCapacity() {
+    if (this.games.size() > this.maxGames && this.trimming.compareAndSet(false, true)) {
+      try {
+        this.sweeper.execute(guarded("trim the games", this::trim));
+      } catch (RejectedExecutionException e) {
+        // shut down
+        this.trimming.set(false);
+      }
+    }
+  }
+
+  // called with the entry locked
+  private void evict(Entry entry) {
+    // its moves are in the store, it is reloaded from the snapshot if opened again
+    this.snapshot(entry);
+    entry.evicted = true;
+    entry.loading = null;
+    this.games.remove(entry.gameId, entry);
+  }
+
+  /** .
+   * snapshot the games changed since their last snapshot,
+   * so that they are recovered without replaying every move.
+   * Games in use are skipped and taken at the next round,
+   * as are games whose snapshot failed.
+   */
+  public void snapshotAll() {
+    for (Entry entry : this.games.values()) {
+      if (!entry.lock.tryLock()) {
+        continue;
+      }
+      try {
+        this.snapshot(entry);
+      } catch (RuntimeException e) {
+        LOG.warn("Cannot snapshot game={}", entry.gameId, e);
+      } finally {
+        entry.lock.unlock();
+      }
+    }
+  }
+
+  private void snapshot(Entry entry) {
+    if (entry.loaded && !entry.evicted && entry.board.getVersion() != entry.snapshotVersion) {
+      this.db.snapshot(entry.gameId, entry.board);
+      entry.snapshotVersion = entry.board.getVersion();
+    }
+  }
+
+  /** .
+   * @param gameId game id sent by a client
+   * @return if the id can name a game
+   */
+  public static boolean isValidId(String gameId) {
+    return gameId != null && GAME_ID.matcher(gameId).matches();
+  }
+
+  /** .
+   * @return number of games held in memory
+   */
+  public int size() {
+    return this.games.size();
+  }
+
+  /** stop the eviction sweeper and the recovery, and snapshot the games.*/
+  public void shutdown() {
+    this.sweeper.shutdownNow();
+    this.recovery.shutdownNow();
+    this.snapshotAll();
+  }
+}
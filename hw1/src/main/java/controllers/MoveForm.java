@@ -0,0 +1,160 @@
+package controllers;
+
+import io.javalin.http.BadRequestResponse;
+import java.io.IOException;
+import java.io.InputStream;
+
+/** The x and y of a move, read from the url encoded form body
+ * straight into ints: no body string, no form map and no value
+ * strings are built. Each thread reuses one form and one buffer.
+ * Keys other than x and y are skipped, the first x and the first y
+ * count, and spaces around a value are allowed, as with formParam.
+ */
+public final class MoveForm {
+
+  /** value of a coordinate missing from the form. */
+  public static final int MISSING = -1;
+
+  private static final ThreadLocal<MoveForm> FORMS = ThreadLocal.withInitial(MoveForm::new);
+
+  private final byte[] buffer = new byte[64];
+
+  private int x;
+
+  private int y;
+
+  // state of the value being read
+  private int value;
+
+  private int digits;
+
+  private boolean negative;
+
+  private boolean trailing;
+
+  private MoveForm() {
+  }
+
+  /** .
+   * @param in the request body
+   * @return the form of the current thread, filled from the body.
+   *         Only valid until the thread reads the next form
+   * @throws IOException if the body cannot be read
+   * @throws BadRequestResponse if x or y is not an integer
+   */
+  public static MoveForm read(InputStream in) throws IOException {
+    MoveForm form = FORMS.get();
+    form.parse(in);
+    return form;
+  }
+
+  /** .
+   * @param value a decimal integer, as a path parameter
+   * @param name what the value is, for the error message
+   * @return the integer
+   * @throws BadRequestResponse if the value is not an integer
+   */
+  public static int parseInt(String value, String name) {
+    if (value.isEmpty() || value.length() > 9) {
+      throw new BadRequestResponse("Invalid " + name);
+    }
+    int result = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < '0' || c > '9') {
+        throw new BadRequestResponse("Invalid " + name);
+      }
+      result = result * 10 + c - '0';
+    }
+    return result;
+  }
+
+  /** get the x of the move, {@link #MISSING} if absent.*/
+  public int getX() {
+    return this.x;
+  }
+
+  /** get the y of the move, {@link #MISSING} if absent.*/
+  public int getY() {
+    return this.y;
+  }
+
+  private void parse(InputStream in) throws IOException {
+    this.x = MISSING;
+    this.y = MISSING;
+    // the key byte if the key is a single byte, 0 for other keys,
+    // -1 while more of the key may follow
+    int key = -1;
+    boolean inValue = false;
+    boolean seenX = false;
+    boolean seenY = false;
+    int keyLength = 0;
+    int read;
+    while ((read = in.read(this.buffer)) != -1) {
+      for (int i = 0; i < read; i++) {
+        byte b = this.buffer[i];
+        if (b == '&') {
+          if (inValue) {
+            if (key == 'x' && !seenX) {
+              this.x = this.finish("x");
+              seenX = true;
+            } else if (key == 'y' && !seenY) {
+              this.y = this.finish("y");
+              seenY = true;
+            }
+          }
+          key = -1;
+          keyLength = 0;
+          inValue = false;
+        } else if (inValue) {
+          if (key == 'x' && !seenX || key == 'y' && !seenY) {
+            this.accept(b, key == 'x' ? "x" : "y");
+          }
+        } else if (b == '=') {
+          inValue = true;
+          key = keyLength == 1 ? key : 0;
+          this.value = 0;
+          this.digits = 0;
+          this.negative = false;
+          this.trailing = false;
+        } else {
+          key = keyLength == 0 ? b : 0;
+          keyLength++;
+        }
+      }
+    }
+    if (inValue) {
+      if (key == 'x' && !seenX) {
+        this.x = this.finish("x");
+      } else if (key == 'y' && !seenY) {
+        this.y = this.finish("y");
+      }
+    }
+  }
+
+  private void accept(byte b, String name) {
+    if (b == ' ' || b == '+') {
+      // an encoded space ends the digits
+      this.trailing = this.digits > 0 || this.negative;
+      return;
+    }
+    if (this.trailing) {
+      throw new BadRequestResponse("Invalid " + name);
+    }
+    if (b == '-' && this.digits == 0 && !this.negative) {
+      this.negative = true;
+    } else if (b >= '0' && b <= '9' && this.digits < 9) {
+      this.value = this.value * 10 + b - '0';
+      this.digits++;
+    } else {
+      throw new BadRequestResponse("Invalid " + name);
+    }
+  }
+
+  private int finish(String name) {
+    if (this.digits == 0) {
+      throw new BadRequestResponse("Invalid " + name);
+    }
+    return this.negative ? -this.value : this.value;
+  }
+}
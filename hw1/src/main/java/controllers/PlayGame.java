@@ -1,34 +1,65 @@
 package controllers;
 
-import com.google.gson.Gson;
 import io.javalin.Javalin;
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.Context;
+import io.javalin.http.ForbiddenResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.Queue;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import models.BitBoard;
 import models.GameBoard;
+import models.JsonCodec;
 import models.Message;
 import models.Move;
 import models.Player;
-import org.eclipse.jetty.websocket.api.Session;
-import utils.Database;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.GameStore;
+import utils.Metrics;
 
 public class PlayGame {
 
+  private static final Logger LOG = LoggerFactory.getLogger(PlayGame.class);
+
   private static final int PORT_NUMBER = 8080;
-  private static Gson gson = new Gson();
+  // win length of a larger board when the client does not choose one
+  private static final int MAX_DEFAULT_WIN_LENGTH = 5;
+  // responses to moves, encoded once
+  private static final byte[] MOVED = messageBytes(new Message(true, 100, ""));
+  private static final ConcurrentHashMap<String, byte[]> REJECTED = new ConcurrentHashMap<>();
+  private static final Metrics.Timer VALIDATE = Metrics.registry().timer(
+      "tictactoe_move_validation_seconds", "Time to check a move against the board.");
+  private static final Metrics.Timer MAKE_MOVEMENT = Metrics.registry().timer(
+      "tictactoe_make_movement_seconds", "Time to play a valid move on the board.");
+  private static final Metrics.Timer ADD_MOVE = Metrics.registry().timer(
+      "tictactoe_db_add_move_seconds", "Time to persist a move, commit included.");
   private static Javalin app;
-  private static GameBoard gameboard;
-  private static Database db;
+  private static GameRegistry registry;
+  private static GameStore db;
+  // runs the game routes, null to run them on the Jetty threads
+  private static ExecutorService workers;
 
   /**
    * Main method of the application.
-   * 
+   *
    * @param args Command line arguments
    */
   public static void main(final String[] args) {
 
-    gameboard = new GameBoard();
-    db = new Database();
-    db.recover(gameboard); // recover at the beginning
+    db = GameStore.fromProperties();
+    db.createTable();
+    registry = new GameRegistry(db);
+    // recover in the background, requests wait for their own game only
+    registry.preload(db.gameIds());
+    workers = RequestWorkers.fromProperties();
+    UiWebSocket.setRegistry(registry);
+    registerGauges();
     app = Javalin.create(config -> {
       config.addStaticFiles("/public");
     }).start(PORT_NUMBER);
@@ -44,51 +75,231 @@ public class PlayGame {
     });
 
     // Start a new game
-    app.get("/newgame", ctx -> {
-      gameboard = new GameBoard();
-      // re-create table
-      db.dropTable();
-      db.createTable();
+    app.get("/newgame", RequestWorkers.handler(workers, ctx -> {
+      newGame(GameStore.DEFAULT_GAME);
       ctx.status(200); // OK
       ctx.redirect("/tictactoe.html");
-    });
+      return null;
+    }));
 
     // Player 1 starts the game
-    app.post("/startgame", ctx -> {
-      String str = ctx.body();
-      char type = str.charAt(str.length() - 1);
-      Player p1 = new Player(type, 1);
-
-      gameboard.setPlayer1(p1);      
-      // set p1 in db
-      db.addPlayers(p1);
-      ctx.status(201); // created
-      ctx.result(gson.toJson(gameboard));
-    });
+    app.post("/startgame", RequestWorkers.handler(workers,
+        ctx -> startGame(ctx, GameStore.DEFAULT_GAME)));
 
     // Player 2 joins the game
-    app.get("/joingame", ctx -> {
+    app.get("/joingame", RequestWorkers.handler(workers, ctx -> {
+      joinGame(GameStore.DEFAULT_GAME);
+      ctx.status(200); // redirected
+      ctx.redirect("/tictactoe.html?p=2");
+      return null;
+    }));
+
+    // movement
+    app.post("/move/:playerId", RequestWorkers.handler(workers,
+        ctx -> move(ctx, GameStore.DEFAULT_GAME)));
+
+    // get the gameboard status
+    app.get("/gameboard", ctx -> {
+      ctx.status(200); // OK
+      ctx.result(boardBytes(GameStore.DEFAULT_GAME));
+    });
+
+    // Same endpoints for any game hosted by the server
+    app.get("/game/:gameId/newgame", RequestWorkers.handler(workers, ctx -> {
+      ctx.status(200); // OK
+      return newGame(gameId(ctx));
+    }));
+
+    app.post("/game/:gameId/startgame", RequestWorkers.handler(workers,
+        ctx -> startGame(ctx, gameId(ctx))));
+
+    app.get("/game/:gameId/joingame", RequestWorkers.handler(workers, ctx -> {
+      ctx.status(200); // OK
+      return joinGame(gameId(ctx));
+    }));
+
+    app.post("/game/:gameId/move/:playerId", RequestWorkers.handler(workers,
+        ctx -> move(ctx, gameId(ctx))));
+
+    // reads never wait for a lock, they stay on the Jetty threads
+    app.get("/game/:gameId/gameboard", ctx -> {
+      ctx.status(200); // OK
+      ctx.result(boardBytes(gameId(ctx)));
+    });
+
+    // metrics in the Prometheus text format, to local scrapers only
+    app.get("/metrics", ctx -> {
+      if (!InetAddress.getByName(ctx.req.getRemoteAddr()).isLoopbackAddress()) {
+        throw new ForbiddenResponse();
+      }
+      ctx.contentType("text/plain; version=0.0.4");
+      ctx.result(Metrics.registry().scrape());
+    });
+
+    // Web sockets - DO NOT DELETE or CHANGE
+    app.ws("/gameboard", new UiWebSocket());
+    app.ws("/game/:gameId/gameboard", new UiWebSocket());
+  }
+
+  /**
+   * Register the gauges of the running server, replacing those of
+   * a server started before in the same JVM.
+   */
+  private static void registerGauges() {
+    final GameRegistry games = registry;
+    Metrics metrics = Metrics.registry();
+    metrics.gauge("tictactoe_live_games", "Games held in memory.", games::size);
+    metrics.gauge("tictactoe_websocket_sessions", "Open web socket sessions.",
+        UiWebSocket::sessionCount);
+    metrics.gauge("tictactoe_lagging_sessions", "Sessions dropping board updates.",
+        SessionOutbox::laggingSessions);
+    metrics.counter("tictactoe_dropped_messages_total",
+        "Board updates dropped for slow sessions.", SessionOutbox::droppedMessages);
+  }
+
+  /**
+   * Read and check the game id of a game route.
+   *
+   * @param ctx request context
+   * @return the game id
+   */
+  private static String gameId(final Context ctx) {
+    String gameId = ctx.pathParam("gameId");
+    if (!GameRegistry.isValidId(gameId)) {
+      throw new BadRequestResponse("Invalid game id");
+    }
+    return gameId;
+  }
+
+  /**
+   * Read an integer from the form body.
+   *
+   * @param ctx request context
+   * @param key form key
+   * @param defaultValue value when the key is missing
+   * @return the value of the key
+   */
+  private static int intParam(final Context ctx, final String key, final int defaultValue) {
+    String value = ctx.formParam(key);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      throw new BadRequestResponse("Invalid " + key);
+    }
+  }
+
+  /**
+   * Replace a game with an empty board.
+   *
+   * @param gameId the game to reset
+   * @return Gameboard JSON
+   */
+  private static String newGame(final String gameId) {
+    GameRegistry.Entry game = registry.reset(gameId);
+    try {
+      return GameRegistry.snapshot(game.getBoard()).getJson();
+    } finally {
+      game.unlock();
+    }
+  }
+
+  /**
+   * Player 1 starts a game.
+   *
+   * @param ctx request context
+   * @param gameId the game to start
+   * @return Gameboard JSON after player 1 joined
+   */
+  private static String startGame(final Context ctx, final String gameId) {
+    String str = ctx.body();
+    String typeParam = ctx.formParam("type");
+    char type = typeParam != null && typeParam.length() == 1
+        ? typeParam.charAt(0) : str.charAt(str.length() - 1);
+    Player p1 = new Player(type, 1);
+
+    GameRegistry.Entry game = registry.open(gameId);
+    try {
+      GameBoard gameboard = game.getBoard();
+      int size = gameboard.getSize();
+      int winLength = gameboard.getWinLength();
+      // optional board shape, e.g. size=15&winLength=5
+      if (ctx.formParam("size") != null) {
+        size = intParam(ctx, "size", BitBoard.DEFAULT_SIZE);
+        winLength = intParam(ctx, "winLength", Math.min(size, MAX_DEFAULT_WIN_LENGTH));
+        if (!BitBoard.isValidShape(size, winLength)) {
+          throw new BadRequestResponse("Invalid board size");
+        }
+        if ((size != gameboard.getSize() || winLength != gameboard.getWinLength())
+            && gameboard.getPieceCount() > 0) {
+          throw new BadRequestResponse("The board size cannot change after the first move");
+        }
+      }
+      Player current = gameboard.getP1();
+      if (current != null && current.getType() != type && gameboard.getPieceCount() > 0) {
+        throw new BadRequestResponse("The player type cannot change after the first move");
+      }
+      // set p1 in db first: if it fails, the request fails
+      // and the board is left as it was
+      db.addPlayers(gameId, p1, size, winLength);
+      if (size != gameboard.getSize() || winLength != gameboard.getWinLength()) {
+        gameboard.setDimensions(size, winLength);
+      }
+      gameboard.setPlayer1(p1);
+      ctx.status(201); // created
+      return GameRegistry.snapshot(game.getBoard()).getJson();
+    } finally {
+      game.unlock();
+    }
+  }
+
+  /**
+   * Player 2 joins a game.
+   *
+   * @param gameId the game to join
+   * @return Gameboard JSON after player 2 joined
+   */
+  private static String joinGame(final String gameId) {
+    GameRegistry.Entry game = registry.open(gameId);
+    try {
+      GameBoard gameboard = game.getBoard();
       char type = 'O';
       Player p1 = gameboard.getP1();
       if (p1.getType() == 'O') {
         type = 'X';
       }
       Player p2 = new Player(type, 2);
+      // set p2 in db first, as p1
+      db.addPlayers(gameId, p2, gameboard.getSize(), gameboard.getWinLength());
       gameboard.setPlayer2(p2);
-      // set p2 in db
-      db.addPlayers(p2);
-      
-      ctx.status(200); // redirected
-      ctx.redirect("/tictactoe.html?p=2");
-      sendGameBoardToAllPlayers(gson.toJson(gameboard));
-    });
+      sendGameBoardToAllPlayers(gameId, gameboard);
+      return GameRegistry.snapshot(gameboard).getJson();
+    } finally {
+      game.unlock();
+    }
+  }
 
-    // movement
-    app.post("/move/:playerId", ctx -> {
-      int id = Integer.parseInt(ctx.pathParam("playerId"));
-      String str = ctx.body();
-      int x = Character.getNumericValue(str.charAt(2));
-      int y = Character.getNumericValue(str.charAt(6));
+  /**
+   * Check and make a movement.
+   *
+   * @param ctx request context
+   * @param gameId the game to move in
+   * @return Message JSON telling if the move was made
+   * @throws IOException if the body cannot be read
+   */
+  private static InputStream move(final Context ctx, final String gameId) throws IOException {
+    int id = MoveForm.parseInt(ctx.pathParam("playerId"), "player");
+    // off the board when missing, validMove rejects it
+    MoveForm form = MoveForm.read(ctx.req.getInputStream());
+    int x = form.getX();
+    int y = form.getY();
+    // the game is locked until the move is persisted and queued to
+    // every socket, so moves and updates are seen in the same order
+    GameRegistry.Entry game = registry.open(gameId);
+    try {
+      GameBoard gameboard = game.getBoard();
       Player p1 = gameboard.getP1();
       Player p2 = gameboard.getP2();
       Move move;
@@ -97,53 +308,98 @@ public class PlayGame {
       } else {
         move = new Move(p2, x, y);
       }
+      long start = System.nanoTime();
       String message = gameboard.validMove(move);
-      System.out.println(message);
+      VALIDATE.recordSince(start);
       if (!message.equals("")) {
-        Message mes = new Message(false, 100, message);
-        ctx.result(gson.toJson(mes));
-      } else {
-        // make valid movement
-        gameboard.makeMovement(move);
-        Message mes = new Message(true, 100, "");
-        
-        //add valid move to db
-        db.addMove(move);
-        ctx.result(gson.toJson(mes));
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("move rejected game={} player={} x={} y={} reason=\"{}\"",
+              gameId, id, x, y, message);
+        }
+        // a rejected move changes nothing, nobody else is told
+        return new ByteArrayInputStream(REJECTED.computeIfAbsent(message,
+            m -> messageBytes(new Message(false, 100, m))));
       }
-      System.out.println("make a move here");
-      sendGameBoardToAllPlayers(gson.toJson(gameboard));
-    });
-    
-    // get the gameboard status
-    app.get("/gameboard", ctx -> {
-      ctx.status(200); // OK
-      ctx.result(gson.toJson(gameboard));
-    });
+      // add valid move to db first: if the store fails, the
+      // request fails and the board is left as it was
+      start = System.nanoTime();
+      db.addMove(gameId, move);
+      ADD_MOVE.recordSince(start);
 
-    // Web sockets - DO NOT DELETE or CHANGE
-    app.ws("/gameboard", new UiWebSocket());
+      // make valid movement
+      start = System.nanoTime();
+      gameboard.makeMovement(move);
+      MAKE_MOVEMENT.recordSince(start);
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("move made game={} player={} x={} y={}", gameId, id, x, y);
+      }
+      sendMoveToAllPlayers(gameId, gameboard, move);
+      return new ByteArrayInputStream(MOVED);
+    } finally {
+      game.unlock();
+    }
   }
 
   /**
-   * Send message to all players.
-   * 
-   * @param gameBoardJson Gameboard JSON
-   * @throws IOException Websocket message send IO Exception
+   * Encode a message.
+   *
+   * @param message the message
+   * @return Message JSON in UTF-8
    */
-  private static void sendGameBoardToAllPlayers(final String gameBoardJson) {
-    Queue<Session> sessions = UiWebSocket.getSessions();
-    for (Session sessionPlayer : sessions) {
-      System.out.println("one here");
-      try {
-        sessionPlayer.getRemote().sendString(gameBoardJson);
-      } catch (IOException e) {
-        // Add logger here
-      }
+  private static byte[] messageBytes(final Message message) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      JsonCodec.writeMessage(message, out);
+    } catch (IOException e) {
+      // not thrown by a ByteArrayOutputStream
+      throw new UncheckedIOException(e);
     }
+    return out.toByteArray();
+  }
+
+  /**
+   * Read the cached JSON of a game.
+   *
+   * @param gameId the game to serialize
+   * @return Gameboard JSON in UTF-8, encoded once per change
+   */
+  private static ByteArrayInputStream boardBytes(final String gameId) {
+    return new ByteArrayInputStream(registry.read(gameId).getBytes());
+  }
+
+  /**
+   * Send message to all players and spectators of a game.
+   * Sends are queued per session and written asynchronously,
+   * so this never waits for a slow client and can be called
+   * with the game locked.
+   *
+   * @param gameId the game that changed
+   * @param gameboard the board of the game, locked by the caller
+   */
+  private static void sendGameBoardToAllPlayers(final String gameId,
+      final GameBoard gameboard) {
+    UiWebSocket.broadcast(gameId, gameboard);
+  }
+
+  /**
+   * Send a move to all players and spectators of a game, as the
+   * board to most sessions and as the move alone to delta sessions.
+   *
+   * @param gameId the game that changed
+   * @param gameboard the board after the move, locked by the caller
+   * @param move the move just made
+   */
+  private static void sendMoveToAllPlayers(final String gameId,
+      final GameBoard gameboard, final Move move) {
+    UiWebSocket.broadcastMove(gameId, gameboard, move);
   }
 
   public static void stop() {
     app.stop();
+    if (workers != null) {
+      workers.shutdown();
+    }
+    registry.shutdown();
+    db.close();
   }
 }
@@ -0,0 +1,90 @@
+package controllers;
+
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Runs the blocking part of requests away from the Jetty threads.
+ * With the system property server.virtualThreads=true every request
+ * of a game route runs on its own virtual thread (Java 21 or later):
+ * waiting for a game lock or for a move to reach the disk then parks
+ * the virtual thread instead of holding one of Jetty's pool threads.
+ * Jetty 9.4 cannot run its own pool on virtual threads, so the request
+ * is handed over with an asynchronous Javalin result instead.
+ */
+public final class RequestWorkers {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RequestWorkers.class);
+
+  private RequestWorkers() {
+  }
+
+  /** The part of a request that may block. */
+  @FunctionalInterface
+  public interface Body {
+
+    /** .
+     * @param ctx request context, whose status and headers may be set
+     * @return the response body, a String or an InputStream, null for none
+     * @throws Exception mapped to a response as if thrown by a handler
+     */
+    Object handle(Context ctx) throws Exception;
+  }
+
+  /** .
+   * @return a virtual thread per task executor if the system property
+   *         server.virtualThreads is true and the runtime supports it,
+   *         null to handle requests on the Jetty threads
+   */
+  public static ExecutorService fromProperties() {
+    if (!Boolean.getBoolean("server.virtualThreads")) {
+      return null;
+    }
+    try {
+      // looked up at runtime so that the build still targets Java 11
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      LOG.info("Handling requests on virtual threads");
+      return (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      LOG.warn("Virtual threads need Java 21, handling requests on Jetty threads");
+      return null;
+    }
+  }
+
+  /** .
+   * @param workers executor of the requests, null to run them in place
+   * @param body the work of the request
+   * @return a handler running the body on the executor
+   */
+  public static Handler handler(ExecutorService workers, Body body) {
+    if (workers == null) {
+      return ctx -> respond(ctx, body.handle(ctx));
+    }
+    // the body never calls ctx.result, which would drop the future
+    // before Javalin has seen it
+    return ctx -> ctx.result(CompletableFuture.supplyAsync(() -> {
+      try {
+        return body.handle(ctx);
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new CompletionException(e);
+      }
+    }, workers));
+  }
+
+  private static void respond(Context ctx, Object result) {
+    if (result instanceof String) {
+      ctx.result((String) result);
+    } else if (result instanceof InputStream) {
+      ctx.result((InputStream) result);
+    }
+  }
+}
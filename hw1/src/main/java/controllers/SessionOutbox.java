@@ -0,0 +1,191 @@
+package controllers;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import utils.Metrics;
+
+/** Bounded outbound queue of one web socket session.
+ * Messages are written asynchronously one at a time, so a slow
+ * client never blocks the thread that broadcasts. When the queue
+ * is full the oldest pending message is dropped; a capacity of 1
+ * coalesces to the latest board.
+ * A binary session is sent boards as {@link models.BinaryBoard}
+ * frames rather than JSON text, a delta session is sent
+ * {@link models.BoardUpdate} messages.
+ */
+public class SessionOutbox implements WriteCallback {
+
+  /** pending messages per session unless configured otherwise. */
+  public static final int DEFAULT_CAPACITY = 16;
+
+  private static final int CAPACITY =
+      Math.max(1, Integer.getInteger("broadcast.queueSize", DEFAULT_CAPACITY));
+
+  private static final AtomicLong DROPPED = new AtomicLong();
+
+  private static final AtomicInteger LAGGING = new AtomicInteger();
+
+  private static final Metrics.Timer SEND = Metrics.registry().timer(
+      "tictactoe_broadcast_send_seconds", "Time to write one update to one session.");
+
+  private final Session session;
+
+  private final String gameId;
+
+  private final boolean binary;
+
+  private final boolean delta;
+
+  // String or byte[] messages
+  private final ArrayDeque<Object> pending = new ArrayDeque<>();
+
+  private boolean sending = false;
+
+  private boolean lagging = false;
+
+  private boolean closed = false;
+
+  // when the message being written was handed to Jetty
+  private volatile long sentAt;
+
+  /** .
+   * @param session the web socket session
+   * @param gameId the game watched by the session
+   */
+  public SessionOutbox(Session session, String gameId) {
+    this(session, gameId, false, false);
+  }
+
+  /** .
+   * @param session the web socket session
+   * @param gameId the game watched by the session
+   * @param binary if the session asked for binary boards
+   * @param delta if the session asked for versioned moves
+   */
+  public SessionOutbox(Session session, String gameId, boolean binary, boolean delta) {
+    this.session = session;
+    this.gameId = gameId;
+    this.binary = binary;
+    this.delta = delta;
+  }
+
+  /** get the game watched by the session.*/
+  public String getGameId() {
+    return this.gameId;
+  }
+
+  /** get if the session asked for binary boards.*/
+  public boolean isBinary() {
+    return this.binary;
+  }
+
+  /** get if the session asked for versioned moves.*/
+  public boolean isDelta() {
+    return this.delta;
+  }
+
+  /** .
+   * @param message text message to queue for the session
+   */
+  public void offer(String message) {
+    this.enqueue(message);
+  }
+
+  /** .
+   * @param message binary message to queue for the session. Do not modify.
+   */
+  public void offer(byte[] message) {
+    this.enqueue(message);
+  }
+
+  /** drop pending messages once the session is closed.*/
+  public synchronized void close() {
+    this.closed = true;
+    this.pending.clear();
+    this.clearLagging();
+  }
+
+  @Override
+  public void writeSuccess() {
+    SEND.recordSince(this.sentAt);
+    Object next;
+    synchronized (this) {
+      next = this.pending.pollFirst();
+      if (next == null) {
+        this.sending = false;
+        this.clearLagging();
+        return;
+      }
+    }
+    this.send(next);
+  }
+
+  @Override
+  public void writeFailed(Throwable x) {
+    // the session is broken, the close handler removes it
+    this.close();
+  }
+
+  /** .
+   * @return messages dropped over all sessions since startup
+   */
+  public static long droppedMessages() {
+    return DROPPED.get();
+  }
+
+  /** .
+   * @return sessions currently dropping messages
+   */
+  public static int laggingSessions() {
+    return LAGGING.get();
+  }
+
+  private void enqueue(Object message) {
+    Object next;
+    synchronized (this) {
+      if (this.closed) {
+        return;
+      }
+      if (this.pending.size() >= CAPACITY) {
+        this.pending.pollFirst();
+        DROPPED.incrementAndGet();
+        if (!this.lagging) {
+          this.lagging = true;
+          LAGGING.incrementAndGet();
+        }
+      }
+      this.pending.addLast(message);
+      if (this.sending) {
+        // the write callback picks it up
+        return;
+      }
+      this.sending = true;
+      next = this.pending.pollFirst();
+    }
+    this.send(next);
+  }
+
+  private void send(Object message) {
+    this.sentAt = System.nanoTime();
+    try {
+      if (message instanceof byte[]) {
+        this.session.getRemote().sendBytes(ByteBuffer.wrap((byte[]) message), this);
+      } else {
+        this.session.getRemote().sendString((String) message, this);
+      }
+    } catch (RuntimeException e) {
+      this.writeFailed(e);
+    }
+  }
+
+  private void clearLagging() {
+    if (this.lagging) {
+      this.lagging = false;
+      LAGGING.decrementAndGet();
+    }
+  }
+}
@@ -5,19 +5,119 @@ import io.javalin.websocket.WsCloseHandler;
 import io.javalin.websocket.WsConnectContext;
 import io.javalin.websocket.WsConnectHandler;
 import io.javalin.websocket.WsHandler;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import io.javalin.websocket.WsMessageContext;
+import io.javalin.websocket.WsMessageHandler;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
+import models.BinaryBoard;
+import models.BoardUpdate;
+import models.GameBoard;
+import models.Move;
 import org.eclipse.jetty.websocket.api.Session;
+import utils.GameStore;
 
-/** Web socket class: DO NOT MODIFY.
+/** Web socket class.
+ * Sessions are grouped by the game they watch, so a board
+ * update only goes to the players and spectators of that game.
+ * Each session writes through its own {@link SessionOutbox}.
+ * A client connecting with the query parameter format=binary
+ * is sent {@link BinaryBoard} frames instead of JSON.
+ * A client connecting with updates=delta is sent the board once and
+ * then only the moves, as versioned {@link BoardUpdate} messages;
+ * it sends "resync" to get the board again after a gap in versions.
  * @author Shirish Singh
  *
  */
 public class UiWebSocket implements Consumer<WsHandler>  {
 
-  // Store sessions to broadcast a message to all users
-  private static final Queue<Session> SESSIONS = new ConcurrentLinkedQueue<>();
+  /** message a delta session sends to get the full board again. */
+  public static final String RESYNC = "resync";
+
+  // Store sessions of each game to broadcast a message to its users
+  private static final ConcurrentHashMap<String, Group> GROUPS =
+      new ConcurrentHashMap<>();
+
+  // The outbox of each session, to find its group on close
+  private static final ConcurrentHashMap<Session, SessionOutbox> OUTBOXES =
+      new ConcurrentHashMap<>();
+
+  // games read for resyncs, null until the server starts
+  private static volatile GameRegistry registry;
+
+  /** Sessions of one game and the version of its last update. */
+  private static final class Group {
+
+    private final Set<SessionOutbox> sessions = ConcurrentHashMap.newKeySet();
+
+    // bumped by every update, with the game locked
+    private volatile int version;
+  }
+
+  /** One board update, encoded lazily once per format in use. */
+  private static final class Update {
+
+    private final GameBoard board;
+
+    // null when the whole board is sent
+    private final Move move;
+
+    private final int version;
+
+    private String json;
+
+    private byte[] bytes;
+
+    private boolean encoded;
+
+    private String deltaJson;
+
+    private byte[] deltaBytes;
+
+    private Update(GameBoard board, Move move, int version) {
+      this.board = board;
+      this.move = move;
+      this.version = version;
+    }
+
+    private void offer(SessionOutbox outbox) {
+      if (outbox.isBinary() && this.bytes() != null) {
+        if (!outbox.isDelta()) {
+          outbox.offer(this.bytes);
+        } else {
+          if (this.deltaBytes == null) {
+            this.deltaBytes = this.move == null
+                ? BoardUpdate.fullBinary(this.version, this.bytes)
+                : BoardUpdate.moveBinary(this.version, this.move, this.board);
+          }
+          outbox.offer(this.deltaBytes);
+        }
+        return;
+      }
+      if (this.json == null) {
+        this.json = GameRegistry.snapshot(this.board).getJson();
+      }
+      if (!outbox.isDelta()) {
+        outbox.offer(this.json);
+        return;
+      }
+      if (this.deltaJson == null) {
+        this.deltaJson = this.move == null
+            ? BoardUpdate.fullJson(this.version, this.json)
+            : BoardUpdate.moveJson(this.version, this.move, this.board);
+      }
+      outbox.offer(this.deltaJson);
+    }
+
+    private byte[] bytes() {
+      if (!this.encoded) {
+        this.bytes = BinaryBoard.encode(this.board);
+        this.encoded = true;
+      }
+      return this.bytes;
+    }
+  }
 
   @Override
   public void accept(final WsHandler t) {
@@ -27,24 +127,147 @@ public class UiWebSocket implements Consumer<WsHandler>  {
 
       @Override
       public void handleConnect(final WsConnectContext ctx) throws Exception {
-        // TODO Auto-generated method stub
-        SESSIONS.add(ctx.session);
+        String gameId = ctx.pathParamMap().get("gameId");
+        if (gameId == null) {
+          gameId = ctx.queryParam("game", GameStore.DEFAULT_GAME);
+        }
+        if (!GameRegistry.isValidId(gameId)) {
+          ctx.session.close(1008, "Invalid game id");
+          return;
+        }
+        boolean binary = "binary".equals(ctx.queryParam("format"));
+        boolean delta = "delta".equals(ctx.queryParam("updates"));
+        SessionOutbox outbox = new SessionOutbox(ctx.session, gameId, binary, delta);
+        OUTBOXES.put(ctx.session, outbox);
+        if (delta) {
+          // no move may reach it before its base board
+          resync(outbox, true);
+        } else {
+          join(outbox);
+        }
       }
 
     });
 
+    // On Message
+    t.onMessage(new WsMessageHandler() {
+
+      @Override
+      public void handleMessage(final WsMessageContext ctx) throws Exception {
+        SessionOutbox outbox = OUTBOXES.get(ctx.session);
+        if (outbox != null && outbox.isDelta() && RESYNC.equals(ctx.message())) {
+          resync(outbox, false);
+        }
+      }
+    });
+
     // On Close
     t.onClose(new WsCloseHandler() {
 
       @Override
       public void handleClose(final WsCloseContext ctx) throws Exception {
-        SESSIONS.remove(ctx.session);
+        SessionOutbox outbox = OUTBOXES.remove(ctx.session);
+        if (outbox == null) {
+          return;
+        }
+        outbox.close();
+        // drop the group with its last session
+        GROUPS.computeIfPresent(outbox.getGameId(), (id, group) -> {
+          group.sessions.remove(outbox);
+          return group.sessions.isEmpty() ? null : group;
+        });
       }
     });
   }
 
-  public static Queue<Session> getSessions() {
-    return SESSIONS;
+  /** .
+   * @param games the games read when a session needs the full board
+   */
+  static void setRegistry(final GameRegistry games) {
+    registry = games;
+  }
+
+  /** .
+   * @param gameId the game watched
+   * @return outboxes of the players and spectators of the game
+   */
+  public static Set<SessionOutbox> getSessions(final String gameId) {
+    Group group = GROUPS.get(gameId);
+    if (group == null) {
+      return Collections.emptySet();
+    }
+    return group.sessions;
   }
 
+  /** .
+   * queue the whole board for every session of a game without
+   * waiting for any of them to be written. The board is encoded once
+   * per format in use. The caller holds the lock of the game.
+   * @param gameId the game watched
+   * @param board the board to send
+   */
+  public static void broadcast(final String gameId, final GameBoard board) {
+    send(gameId, board, null);
+  }
+
+  /** .
+   * same as {@link #broadcast(String, GameBoard)}, but delta sessions
+   * are only sent the move.
+   * @param gameId the game watched
+   * @param board the board after the move
+   * @param move the move just made
+   */
+  public static void broadcastMove(final String gameId, final GameBoard board,
+      final Move move) {
+    send(gameId, board, move);
+  }
+
+  /** .
+   * @return number of open sessions over all games
+   */
+  public static int sessionCount() {
+    return OUTBOXES.size();
+  }
+
+  private static void send(final String gameId, final GameBoard board, final Move move) {
+    Group group = GROUPS.get(gameId);
+    if (group == null) {
+      return;
+    }
+    Update update = new Update(board, move, ++group.version);
+    for (SessionOutbox outbox : group.sessions) {
+      update.offer(outbox);
+    }
+  }
+
+  private static Group join(final SessionOutbox outbox) {
+    return GROUPS.compute(outbox.getGameId(), (id, group) -> {
+      if (group == null) {
+        group = new Group();
+      }
+      group.sessions.add(outbox);
+      return group;
+    });
+  }
+
+  // queue the whole board at the current version, with the game locked
+  // so that no update of the game is sent in between; a new session
+  // joins its group under the same lock, so the board comes first
+  private static void resync(final SessionOutbox outbox, final boolean joining) {
+    GameRegistry games = registry;
+    if (games == null) {
+      if (joining) {
+        join(outbox);
+      }
+      return;
+    }
+    GameRegistry.Entry game = games.open(outbox.getGameId());
+    try {
+      Group group = joining ? join(outbox) : GROUPS.get(outbox.getGameId());
+      int version = group == null ? 0 : group.version;
+      new Update(game.getBoard(), null, version).offer(outbox);
+    } finally {
+      game.unlock();
+    }
+  }
 }
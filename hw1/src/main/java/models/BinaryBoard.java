@@ -0,0 +1,135 @@
+package models;
+
+import java.nio.ByteBuffer;
+
+/** Compact binary form of a {@link GameBoard} for web socket clients
+ * that ask for it. Everything but the cells fits in one big-endian
+ * int of flags:
+ * bits 18-19 turn, 20-21 winner, 22 draw, 23 game started,
+ * 24 player 1 joined, 25 player 1 plays O, 26 player 2 joined,
+ * 27 player 2 plays O.
+ * Each cell takes two bits: 0 empty, 1 player 1, 2 player 2.
+ * A 3x3 board is the flags alone, with cell i (row * 3 + col) in
+ * bits 2i and 2i+1, so an update is 4 bytes. Any other board is the
+ * flags, the size and win length as one byte each, and then four
+ * cells per byte, cell i in bits 2(i % 4) and 2(i % 4)+1 of byte i / 4.
+ */
+public final class BinaryBoard {
+
+  /** bytes of the encoding of a 3x3 board. */
+  public static final int PACKED_LENGTH = 4;
+
+  private static final int HEADER = 6;
+
+  private static final int TURN = 18;
+
+  private static final int WINNER = 20;
+
+  private static final int DRAW = 1 << 22;
+
+  private static final int STARTED = 1 << 23;
+
+  private static final int P1 = 24;
+
+  private static final int P2 = 26;
+
+  private BinaryBoard() {
+  }
+
+  /** .
+   * @param board the board to encode
+   * @return the encoded board, null if a player has a piece other
+   *         than X and O, which only the JSON can carry
+   */
+  public static byte[] encode(GameBoard board) {
+    int size = board.getSize();
+    Player p1 = board.getP1();
+    Player p2 = board.getP2();
+    if (!isEncodable(p1) || !isEncodable(p2)) {
+      return null;
+    }
+    int flags = board.getTurn() << TURN | board.getWinner() << WINNER
+        | (board.isGameDraw() ? DRAW : 0) | (board.getGameStatus() ? STARTED : 0)
+        | player(p1) << P1 | player(p2) << P2;
+    if (isPacked(size, board.getWinLength())) {
+      for (int cell = 0; cell < size * size; cell++) {
+        flags |= owner(board, cell / size, cell % size) << 2 * cell;
+      }
+      return ByteBuffer.allocate(PACKED_LENGTH).putInt(flags).array();
+    }
+    byte[] bytes = new byte[HEADER + (size * size + 3) / 4];
+    ByteBuffer.wrap(bytes).putInt(flags).put((byte) size).put((byte) board.getWinLength());
+    for (int cell = 0; cell < size * size; cell++) {
+      bytes[HEADER + cell / 4] |= owner(board, cell / size, cell % size) << 2 * (cell % 4);
+    }
+    return bytes;
+  }
+
+  /** .
+   * @param bytes an encoded board
+   * @return the board, its pieces X and O as the players chose
+   * @throws IllegalArgumentException if the bytes are not a board
+   */
+  public static GameBoard decode(byte[] bytes) {
+    ByteBuffer in = ByteBuffer.wrap(bytes);
+    int flags = in.getInt();
+    boolean packed = bytes.length == PACKED_LENGTH;
+    int size = packed ? BitBoard.DEFAULT_SIZE : Byte.toUnsignedInt(in.get());
+    int winLength = packed ? BitBoard.DEFAULT_WIN_LENGTH : Byte.toUnsignedInt(in.get());
+    if (!BitBoard.isValidShape(size, winLength)
+        || !packed && bytes.length != HEADER + (size * size + 3) / 4) {
+      throw new IllegalArgumentException("Invalid board encoding");
+    }
+    GameBoard board = new GameBoard(size, winLength);
+    // pieces[1] is p1, pieces[2] is p2
+    char[] pieces = {'\u0000', piece(flags >> P1), piece(flags >> P2)};
+    if (pieces[1] != '\u0000') {
+      board.setPlayer1(new Player(pieces[1], 1));
+    }
+    if (pieces[2] != '\u0000') {
+      board.setPlayer2(new Player(pieces[2], 2));
+    }
+    for (int cell = 0; cell < size * size; cell++) {
+      int owner = packed ? flags >> 2 * cell & 3 : bytes[HEADER + cell / 4] >> 2 * (cell % 4) & 3;
+      if (owner == 1 || owner == 2) {
+        board.setPiece(cell / size, cell % size, pieces[owner]);
+      }
+    }
+    board.setGameStatus((flags & STARTED) != 0);
+    board.setTurn(flags >> TURN & 3);
+    board.setResult(flags >> WINNER & 3, (flags & DRAW) != 0);
+    return board;
+  }
+
+  private static boolean isPacked(int size, int winLength) {
+    return size == BitBoard.DEFAULT_SIZE && winLength == BitBoard.DEFAULT_WIN_LENGTH;
+  }
+
+  private static boolean isEncodable(Player player) {
+    return player == null || player.getType() == 'X' || player.getType() == 'O';
+  }
+
+  // two bits: joined, plays O
+  private static int player(Player player) {
+    if (player == null) {
+      return 0;
+    }
+    return player.getType() == 'O' ? 3 : 1;
+  }
+
+  private static char piece(int bits) {
+    if ((bits & 1) == 0) {
+      return '\u0000';
+    }
+    return (bits & 2) != 0 ? 'O' : 'X';
+  }
+
+  private static int owner(GameBoard board, int row, int col) {
+    char piece = board.getPiece(row, col);
+    if (piece == '\u0000') {
+      return 0;
+    }
+    Player p1 = board.getP1();
+    return p1 != null && p1.getType() == piece ? 1 : 2;
+  }
+}
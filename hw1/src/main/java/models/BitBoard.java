@@ -0,0 +1,273 @@
+package models;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** N x N board where K pieces in a row win, stored as one
+ * bitset per piece. Cell (row, col) is bit row * N + col.
+ * An occupied cell is a bit test and a running count of
+ * pieces tells when the board is full.
+ * After a move only the lines through the played cell are checked:
+ * boards of up to 64 cells test a precomputed table of the
+ * K-long windows through each cell (the 8 lines of a 3x3 board),
+ * larger boards count matching pieces along the 4 directions,
+ * so the check costs O(K) whatever the size of the board.
+ */
+public final class BitBoard {
+
+  /** rows and columns of the classic board. */
+  public static final int DEFAULT_SIZE = 3;
+
+  /** pieces in a row needed to win on the classic board. */
+  public static final int DEFAULT_WIN_LENGTH = 3;
+
+  /** largest board supported. */
+  public static final int MAX_SIZE = 128;
+
+  // right, down, down-right, down-left
+  private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+
+  // window tables of the small boards, shared by boards of the same shape
+  private static final ConcurrentHashMap<Long, long[][]> TABLES = new ConcurrentHashMap<>();
+
+  private final int size;
+
+  private final int winLength;
+
+  private final int cells;
+
+  // pieces[i] is the piece stored in bits[i], '\u0000' if unused
+  private final char[] pieces = {'\u0000', '\u0000'};
+
+  private final long[][] bits;
+
+  // linesThrough[cell] holds the winning windows crossing the cell,
+  // null when the board does not fit in one long
+  private final long[][] linesThrough;
+
+  private int occupied = 0;
+
+  /** class constructor of the classic 3x3 board. */
+  public BitBoard() {
+    this(DEFAULT_SIZE, DEFAULT_WIN_LENGTH);
+  }
+
+  /** .
+   * @param size rows and columns of the board
+   * @param winLength pieces in a row needed to win
+   */
+  public BitBoard(int size, int winLength) {
+    if (!isValidShape(size, winLength)) {
+      throw new IllegalArgumentException(
+          "Invalid board: " + size + "x" + size + ", " + winLength + " in a row");
+    }
+    this.size = size;
+    this.winLength = winLength;
+    this.cells = size * size;
+    int words = (this.cells + Long.SIZE - 1) / Long.SIZE;
+    this.bits = new long[][] {new long[words], new long[words]};
+    if (this.cells <= Long.SIZE) {
+      long key = ((long) size << 32) | winLength;
+      this.linesThrough = TABLES.computeIfAbsent(key, k -> windows(size, winLength));
+    } else {
+      this.linesThrough = null;
+    }
+  }
+
+  /** .
+   * @param size rows and columns of the board
+   * @param winLength pieces in a row needed to win
+   * @return if a board of this shape can be built
+   */
+  public static boolean isValidShape(int size, int winLength) {
+    return size >= 1 && size <= MAX_SIZE && winLength >= 1 && winLength <= size;
+  }
+
+  /** get the rows and columns of the board.*/
+  public int getSize() {
+    return this.size;
+  }
+
+  /** get the pieces in a row needed to win.*/
+  public int getWinLength() {
+    return this.winLength;
+  }
+
+  /** .
+   * @param row row number
+   * @param col column number
+   * @return if the cell is on the board
+   */
+  public boolean inBounds(int row, int col) {
+    return row >= 0 && row < this.size && col >= 0 && col < this.size;
+  }
+
+  /** .
+   * @param row row number, assumed on the board
+   * @param col column number, assumed on the board
+   * @return if a piece is on the cell
+   */
+  public boolean isOccupied(int row, int col) {
+    return this.slotAt(row * this.size + col) >= 0;
+  }
+
+  /** .
+   * @param row row number, assumed on the board
+   * @param col column number, assumed on the board
+   * @return the piece on the cell, '\u0000' if empty
+   */
+  public char get(int row, int col) {
+    int slot = this.slotAt(row * this.size + col);
+    return slot < 0 ? '\u0000' : this.pieces[slot];
+  }
+
+  /** .
+   * @param row row number, assumed on the board
+   * @param col column number, assumed on the board
+   * @param piece the piece to put, '\u0000' clears the cell
+   */
+  public void set(int row, int col, char piece) {
+    int cell = row * this.size + col;
+    int word = cell >>> 6;
+    long bit = 1L << cell;
+    if (this.slotAt(cell) >= 0) {
+      this.occupied--;
+    }
+    this.bits[0][word] &= ~bit;
+    this.bits[1][word] &= ~bit;
+    if (piece != '\u0000') {
+      this.bits[this.slot(piece)][word] |= bit;
+      this.occupied++;
+    }
+  }
+
+  /** .
+   * @param row row of the last move, assumed on the board
+   * @param col column of the last move, assumed on the board
+   * @return if the piece on the cell completes a line through it
+   */
+  public boolean completesLine(int row, int col) {
+    int cell = row * this.size + col;
+    int slot = this.slotAt(cell);
+    if (slot < 0) {
+      return false;
+    }
+    if (this.linesThrough != null) {
+      long mask = this.bits[slot][0];
+      for (long line : this.linesThrough[cell]) {
+        if ((mask & line) == line) {
+          return true;
+        }
+      }
+      return false;
+    }
+    for (int[] dir : DIRECTIONS) {
+      int count = 1
+          + this.run(slot, row, col, dir[0], dir[1])
+          + this.run(slot, row, col, -dir[0], -dir[1]);
+      if (count >= this.winLength) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** .
+   * @return the piece owning a full line, '\u0000' if none
+   */
+  public char lineOwner() {
+    for (int row = 0; row < this.size; row++) {
+      for (int col = 0; col < this.size; col++) {
+        if (this.completesLine(row, col)) {
+          return this.get(row, col);
+        }
+      }
+    }
+    return '\u0000';
+  }
+
+  /** .
+   * @return if every cell holds a piece
+   */
+  public boolean isFull() {
+    return this.occupied == this.cells;
+  }
+
+  /** .
+   * @return number of pieces on the board
+   */
+  public int getOccupied() {
+    return this.occupied;
+  }
+
+  // pieces of the slot next to (row, col) along (dr, dc), at most K - 1
+  private int run(int slot, int row, int col, int dr, int dc) {
+    int count = 0;
+    int r = row + dr;
+    int c = col + dc;
+    while (count < this.winLength - 1 && this.inBounds(r, c)
+        && this.slotAt(r * this.size + c) == slot) {
+      count++;
+      r += dr;
+      c += dc;
+    }
+    return count;
+  }
+
+  private int slotAt(int cell) {
+    int word = cell >>> 6;
+    long bit = 1L << cell;
+    if ((this.bits[0][word] & bit) != 0) {
+      return 0;
+    }
+    if ((this.bits[1][word] & bit) != 0) {
+      return 1;
+    }
+    return -1;
+  }
+
+  private int slot(char piece) {
+    for (int i = 0; i < 2; i++) {
+      if (this.pieces[i] == piece) {
+        return i;
+      }
+    }
+    for (int i = 0; i < 2; i++) {
+      if (this.pieces[i] == '\u0000') {
+        this.pieces[i] = piece;
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("Only two pieces can be on a board: " + piece);
+  }
+
+  // every K-long window of a board of at most 64 cells, by cell
+  private static long[][] windows(int size, int winLength) {
+    long[][] table = new long[size * size][];
+    for (int row = 0; row < size; row++) {
+      for (int col = 0; col < size; col++) {
+        long[] through = new long[DIRECTIONS.length * winLength];
+        int count = 0;
+        for (int[] dir : DIRECTIONS) {
+          for (int start = 1 - winLength; start <= 0; start++) {
+            long line = 0;
+            int i = 0;
+            for (; i < winLength; i++) {
+              int r = row + (start + i) * dir[0];
+              int c = col + (start + i) * dir[1];
+              if (r < 0 || r >= size || c < 0 || c >= size) {
+                break;
+              }
+              line |= 1L << (r * size + c);
+            }
+            if (i == winLength) {
+              through[count++] = line;
+            }
+          }
+        }
+        table[row * size + col] = Arrays.copyOf(through, count);
+      }
+    }
+    return table;
+  }
+}
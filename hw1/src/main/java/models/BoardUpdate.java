@@ -0,0 +1,75 @@
+package models;
+
+import java.nio.ByteBuffer;
+
+/** Versioned board updates for web socket clients that follow a game
+ * by deltas. Every update of a game carries the next version; a
+ * client that sees a version skipped asks for the full board again.
+ * The JSON updates are {"version":..,"board":{..}} with the whole
+ * board, or {"version":..,"move":{"x":..,"y":..,"playerId":..},
+ * "turn":..,"winner":..,"isDraw":..} with the move just made.
+ * The binary updates start with a kind byte and the version as an int:
+ * {@link #FULL} is followed by the {@link BinaryBoard} encoding,
+ * {@link #MOVE} by the row, the column and one byte of state:
+ * bits 0-1 player, 2-3 turn, 4-5 winner, 6 draw.
+ */
+public final class BoardUpdate {
+
+  /** kind of a binary update carrying the whole board. */
+  public static final byte FULL = 0;
+
+  /** kind of a binary update carrying one move. */
+  public static final byte MOVE = 1;
+
+  private static final int HEADER = 5;
+
+  private BoardUpdate() {
+  }
+
+  /** .
+   * @param version version of the update
+   * @param boardJson Gameboard JSON
+   * @return the JSON update with the whole board
+   */
+  public static String fullJson(int version, String boardJson) {
+    return "{\"version\":" + version + ",\"board\":" + boardJson + "}";
+  }
+
+  /** .
+   * @param version version of the update
+   * @param board the {@link BinaryBoard} encoding of the board
+   * @return the binary update with the whole board
+   */
+  public static byte[] fullBinary(int version, byte[] board) {
+    return ByteBuffer.allocate(HEADER + board.length)
+        .put(FULL).putInt(version).put(board).array();
+  }
+
+  /** .
+   * @param version version of the update
+   * @param move the move just made
+   * @param board the board after the move
+   * @return the JSON update with the move
+   */
+  public static String moveJson(int version, Move move, GameBoard board) {
+    return "{\"version\":" + version
+        + ",\"move\":{\"x\":" + move.getX() + ",\"y\":" + move.getY()
+        + ",\"playerId\":" + move.getPlayerID()
+        + "},\"turn\":" + board.getTurn()
+        + ",\"winner\":" + board.getWinner()
+        + ",\"isDraw\":" + board.isGameDraw() + "}";
+  }
+
+  /** .
+   * @param version version of the update
+   * @param move the move just made
+   * @param board the board after the move
+   * @return the binary update with the move
+   */
+  public static byte[] moveBinary(int version, Move move, GameBoard board) {
+    int state = move.getPlayerID() | board.getTurn() << 2 | board.getWinner() << 4
+        | (board.isGameDraw() ? 1 << 6 : 0);
+    return ByteBuffer.allocate(HEADER + 3).put(MOVE).putInt(version)
+        .put((byte) move.getX()).put((byte) move.getY()).put((byte) state).array();
+  }
+}
@@ -1,5 +1,16 @@
 package models;
 
+import com.google.gson.annotations.JsonAdapter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/** The board is kept in a {@link BitBoard} of any size; the JSON
+ * still carries the cells as a boardState array of rows,
+ * see {@link GameBoardAdapter}.
+ */
+@JsonAdapter(GameBoardAdapter.class)
 public class GameBoard {
 
   private Player p1;
@@ -10,11 +21,49 @@ public class GameBoard {
 
   private int turn;
 
-  private char[][] boardState;
+  private BitBoard boardState;
 
   private int winner;
 
   private boolean isDraw;
+
+  // bumped on every change, not part of the JSON
+  private transient long version;
+
+  private transient volatile Snapshot snapshot;
+
+  /** JSON of one version of the board, encoded once and shared
+   * by every response and broadcast until the board changes.
+   */
+  public static final class Snapshot {
+
+    private final long version;
+
+    private final String json;
+
+    private final byte[] utf8;
+
+    private Snapshot(long version, byte[] utf8) {
+      this.version = version;
+      this.utf8 = utf8;
+      this.json = new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /** get the board version of the snapshot.*/
+    public long getVersion() {
+      return this.version;
+    }
+
+    /** get the board JSON.*/
+    public String getJson() {
+      return this.json;
+    }
+
+    /** get the board JSON encoded in UTF-8. Do not modify.*/
+    public byte[] getBytes() {
+      return this.utf8;
+    }
+  }
   
   /**.
    * check and update private member
@@ -25,48 +74,14 @@ public class GameBoard {
    * then it is a draw
    */
   public void update() {
-    for (int i = 0; i < 3; i++) {
-      if (boardState[i][0] == boardState[i][1] 
-          && boardState[i][1] == boardState[i][2] 
-          && boardState[i][0] != '\u0000') {
-        if (p1.getType() == boardState[i][0]) {
-          this.winner = 1;
-        } else {
-          this.winner = 2;
-        }
-      }
-    }
-    
-    for (int i = 0; i < 3; i++) {
-      if (boardState[0][i] == boardState[1][i] 
-          && boardState[1][i] == boardState[2][i]
-          && boardState[0][i] != '\u0000') {
-        if (p1.getType() == boardState[0][i]) {
-          this.winner = 1;
-        } else {
-          this.winner = 2;
-        }
-      }
-    }
-    
-    if (boardState[0][0] == boardState[1][1] 
-        && boardState[1][1] == boardState[2][2]
-        && boardState[1][1] != '\u0000') {
-      if (p1.getType() == boardState[1][1]) {
+    this.changed();
+    char owner = this.boardState.lineOwner();
+    if (owner != '\u0000') {
+      if (p1.getType() == owner) {
         this.winner = 1;
       } else {
         this.winner = 2;
-      }      
-    }
-    
-    if (boardState[2][0] == boardState[1][1] 
-        && boardState[1][1] == boardState[0][2]
-        && boardState[1][1] != '\u0000') {
-      if (p1.getType() == boardState[1][1]) {
-        this.winner = 1;
-      } else {
-        this.winner = 2;
-      }      
+      }
     }
     
     if (this.winner != 0) {
@@ -74,15 +89,7 @@ public class GameBoard {
       return;
     }
     
-    this.isDraw = true;
-    for (int i = 0; i < 3; i++) {
-      for (int j = 0; j < 3; j++) {
-        if (boardState[i][j] == '\u0000') {
-          this.isDraw = false;
-        }
-      }
-    }
-    
+    this.isDraw = this.boardState.isFull();
   }
   
   /** class constructor.
@@ -92,12 +99,16 @@ public class GameBoard {
    * original values
    */
   public GameBoard() {
+    this(BitBoard.DEFAULT_SIZE, BitBoard.DEFAULT_WIN_LENGTH);
+  }
+  
+  /** class constructor of a larger board.
+   * @param size rows and columns of the board
+   * @param winLength pieces in a row needed to win
+   */
+  public GameBoard(int size, int winLength) {
+    this.boardState = new BitBoard(size, winLength);
     this.turn = 1;
-    this.boardState = new char[][] {
-      {'\u0000', '\u0000', '\u0000'},
-      {'\u0000', '\u0000', '\u0000'},
-      {'\u0000', '\u0000', '\u0000'}
-    };
     this.winner = 0;
     this.gameStarted = false;
     this.isDraw = false;
@@ -110,6 +121,7 @@ public class GameBoard {
    * check valid move from move object
    * if id is not the turn 
    * or boardState[x][y] is occupied
+   * or off the board
    * return corresponding message
    * if the message  
    */
@@ -120,7 +132,9 @@ public class GameBoard {
     String message = "";
     if (id != this.turn) {
       message = "Not your turn!";
-    } else if (boardState[x][y] != '\u0000') {
+    } else if (!boardState.inBounds(x, y)) {
+      message = "This cell is not on the board";
+    } else if (boardState.isOccupied(x, y)) {
       message = "This cell has been occupied";
     }
     return message;
@@ -139,23 +153,90 @@ public class GameBoard {
     int x = move.getX();
     int y = move.getY();
     
+    // placed first: a piece the board cannot hold changes nothing
+    this.boardState.set(x, y, type);
+    
     if (id == 1) {
       this.turn = 2;
     } else {
       this.turn = 1;
     }
     
-    this.boardState[x][y] = type;
-    update();
+    updateAfter(x, y);
+  }
+
+  /**.
+   * same as {@link #update()}, but only the lines through
+   * the cell just played can have been completed
+   * @param row row of the last move
+   * @param col column of the last move
+   */
+  private void updateAfter(int row, int col) {
+    this.changed();
+    if (this.boardState.completesLine(row, col)) {
+      if (p1.getType() == this.boardState.get(row, col)) {
+        this.winner = 1;
+      } else {
+        this.winner = 2;
+      }
+      return;
+    }
+    
+    if (this.winner == 0) {
+      this.isDraw = this.boardState.isFull();
+    }
+  }
+
+  /**.
+   * @return the JSON snapshot of the current version,
+   *         serialized only if the board changed since the last call
+   */
+  public Snapshot snapshot() {
+    Snapshot current = this.snapshot;
+    if (current == null) {
+      int size = this.getSize();
+      ByteArrayOutputStream out = new ByteArrayOutputStream(128 + 9 * size * size);
+      try {
+        JsonCodec.writeBoard(this, out);
+      } catch (IOException e) {
+        // not thrown by a ByteArrayOutputStream
+        throw new UncheckedIOException(e);
+      }
+      current = new Snapshot(this.version, out.toByteArray());
+      this.snapshot = current;
+    }
+    return current;
+  }
+
+  /**.
+   * @return if {@link #snapshot()} returns the snapshot it already
+   *         has rather than encoding the board
+   */
+  public boolean hasSnapshot() {
+    return this.snapshot != null;
+  }
+
+  /**.
+   * @return the version of the board, bumped on every change
+   */
+  public long getVersion() {
+    return this.version;
+  }
+
+  private void changed() {
+    this.version++;
+    this.snapshot = null;
   }
   
   /** set the player 1 in board.*/
   public void setPlayer1(Player p) {
+    this.changed();
     this.p1 = p;
   }
   
   /** set the player 2 and change the turn to 1.*/
   public void setPlayer2(Player p) {
+    this.changed();
     this.p2 = p;
     // when p2 is in, game starts
     this.gameStarted = true;
@@ -188,6 +269,7 @@ public class GameBoard {
    * @param status yes or no: is game started
    */
   public void setGameStatus(boolean status) {
+    this.changed();
     this.gameStarted = status;
   }
   
@@ -207,11 +289,42 @@ public class GameBoard {
     return this.winner;
   }
   
+  /**.
+   * @return rows and columns of the board
+   */
+  public int getSize() {
+    return this.boardState.getSize();
+  }
+  
+  /**.
+   * @return pieces in a row needed to win
+   */
+  public int getWinLength() {
+    return this.boardState.getWinLength();
+  }
+  
+  /**.
+   * @param size rows and columns of the board
+   * @param winLength pieces in a row needed to win
+   *        replace the board by an empty one of this shape
+   */
+  public void setDimensions(int size, int winLength) {
+    this.changed();
+    this.boardState = new BitBoard(size, winLength);
+  }
+  
+  /**.
+   * @return number of pieces on the board
+   */
+  public int getPieceCount() {
+    return this.boardState.getOccupied();
+  }
+  
   /**.
    * @return the piece in a grid. Assume valid
    */
   public char getPiece(int row, int col) {
-    return this.boardState[row][col];
+    return this.boardState.get(row, col);
   }
   
   /**.
@@ -227,13 +340,26 @@ public class GameBoard {
    * @param type piece type
    */
   public void setPiece(int row, int col, char type) {
-    this.boardState[row][col] = type;
+    this.changed();
+    this.boardState.set(row, col, type);
+  }
+  
+  /**.
+   * @param winner the winner, 0 if none
+   * @param draw if the game is a draw
+   *        used when the board is read back from JSON
+   */
+  void setResult(int winner, boolean draw) {
+    this.changed();
+    this.winner = winner;
+    this.isDraw = draw;
   }
   
   /**.
    * @param turn whose turn
    */
   public void setTurn(int turn) {
+    this.changed();
     this.turn = turn;
   }
 }
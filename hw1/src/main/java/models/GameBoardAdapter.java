@@ -0,0 +1,185 @@
+package models;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Reads and writes a {@link GameBoard} in the JSON shape Gson
+ * gave it when the cells were a char[][] field:
+ * {"p1":{..},"p2":{..},"gameStarted":..,"turn":..,
+ * "boardState":[[..],[..],[..]],"winner":..,"isDraw":..}.
+ * Players are left out while null, as Gson does.
+ * Boards other than 3x3 three in a row add "size" and "winLength".
+ */
+public class GameBoardAdapter extends TypeAdapter<GameBoard> {
+
+  @Override
+  public void write(JsonWriter out, GameBoard board) throws IOException {
+    out.beginObject();
+    if (board.getP1() != null) {
+      out.name("p1");
+      writePlayer(out, board.getP1());
+    }
+    if (board.getP2() != null) {
+      out.name("p2");
+      writePlayer(out, board.getP2());
+    }
+    out.name("gameStarted").value(board.getGameStatus());
+    out.name("turn").value(board.getTurn());
+    int size = board.getSize();
+    out.name("boardState").beginArray();
+    for (int row = 0; row < size; row++) {
+      out.beginArray();
+      for (int col = 0; col < size; col++) {
+        out.value(String.valueOf(board.getPiece(row, col)));
+      }
+      out.endArray();
+    }
+    out.endArray();
+    out.name("winner").value(board.getWinner());
+    out.name("isDraw").value(board.isGameDraw());
+    if (size != BitBoard.DEFAULT_SIZE || board.getWinLength() != BitBoard.DEFAULT_WIN_LENGTH) {
+      out.name("size").value(size);
+      out.name("winLength").value(board.getWinLength());
+    }
+    out.endObject();
+  }
+
+  @Override
+  public GameBoard read(JsonReader in) throws IOException {
+    Player p1 = null;
+    Player p2 = null;
+    List<List<Character>> cells = new ArrayList<>();
+    boolean gameStarted = false;
+    int turn = 1;
+    int winner = 0;
+    boolean isDraw = false;
+    int size = -1;
+    int winLength = -1;
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "p1":
+          p1 = readPlayer(in);
+          break;
+        case "p2":
+          p2 = readPlayer(in);
+          break;
+        case "gameStarted":
+          gameStarted = in.nextBoolean();
+          break;
+        case "turn":
+          turn = in.nextInt();
+          break;
+        case "boardState":
+          cells = readCells(in);
+          break;
+        case "winner":
+          winner = in.nextInt();
+          break;
+        case "isDraw":
+          isDraw = in.nextBoolean();
+          break;
+        case "size":
+          size = in.nextInt();
+          break;
+        case "winLength":
+          winLength = in.nextInt();
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+    if (size < 0) {
+      size = cells.isEmpty() ? BitBoard.DEFAULT_SIZE : cells.size();
+    }
+    if (winLength < 0) {
+      winLength = Math.min(size, BitBoard.DEFAULT_WIN_LENGTH);
+    }
+    if (!BitBoard.isValidShape(size, winLength)) {
+      throw new JsonSyntaxException("Invalid board: " + size + ", " + winLength);
+    }
+    GameBoard board = new GameBoard(size, winLength);
+    if (p1 != null) {
+      board.setPlayer1(p1);
+    }
+    if (p2 != null) {
+      board.setPlayer2(p2);
+    }
+    for (int row = 0; row < cells.size(); row++) {
+      List<Character> line = cells.get(row);
+      for (int col = 0; col < line.size(); col++) {
+        if (row >= size || col >= size) {
+          throw new JsonSyntaxException("Cell out of the board: " + row + "," + col);
+        }
+        board.setPiece(row, col, line.get(col));
+      }
+    }
+    // setPlayer2 starts the game, the JSON has the last word
+    board.setGameStatus(gameStarted);
+    board.setTurn(turn);
+    board.setResult(winner, isDraw);
+    return board;
+  }
+
+  private static void writePlayer(JsonWriter out, Player player) throws IOException {
+    out.beginObject();
+    out.name("type").value(String.valueOf(player.getType()));
+    out.name("id").value(player.getID());
+    out.endObject();
+  }
+
+  private static Player readPlayer(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    char type = '\u0000';
+    int id = 0;
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "type":
+          type = readChar(in);
+          break;
+        case "id":
+          id = in.nextInt();
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+    return new Player(type, id);
+  }
+
+  private static List<List<Character>> readCells(JsonReader in) throws IOException {
+    List<List<Character>> cells = new ArrayList<>();
+    in.beginArray();
+    while (in.hasNext()) {
+      List<Character> line = new ArrayList<>();
+      in.beginArray();
+      while (in.hasNext()) {
+        line.add(readChar(in));
+      }
+      in.endArray();
+      cells.add(line);
+    }
+    in.endArray();
+    return cells;
+  }
+
+  private static char readChar(JsonReader in) throws IOException {
+    String str = in.nextString();
+    if (str.length() != 1) {
+      throw new JsonSyntaxException("Expecting character, got: " + str);
+    }
+    return str.charAt(0);
+  }
+}
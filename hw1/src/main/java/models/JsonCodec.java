@@ -0,0 +1,327 @@
+package models;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/** Writes the models as UTF-8 JSON straight to a stream, with no
+ * reflection and no intermediate strings. The output is byte for
+ * byte what Gson writes for them, HTML-safe escaping included;
+ * {@link GameBoardAdapter} still reads the JSON back.
+ * Each thread writes through its own small buffer, flushed to the
+ * stream at the end of every call.
+ */
+public final class JsonCodec {
+
+  private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+  private static final ThreadLocal<Sink> SINKS = ThreadLocal.withInitial(Sink::new);
+
+  private JsonCodec() {
+  }
+
+  /** Buffer in front of the stream, so that bytes are not written one at a time. */
+  private static final class Sink {
+
+    private final byte[] buffer = new byte[1024];
+
+    private int count;
+
+    private OutputStream out;
+
+    private void write(int b) throws IOException {
+      if (this.count == this.buffer.length) {
+        this.flush();
+      }
+      this.buffer[this.count++] = (byte) b;
+    }
+
+    private void flush() throws IOException {
+      this.out.write(this.buffer, 0, this.count);
+      this.count = 0;
+    }
+  }
+
+  /** .
+   * @param board the board to write, in the shape of {@link GameBoardAdapter}
+   * @param out the stream written to
+   * @throws IOException if the stream fails
+   */
+  public static void writeBoard(GameBoard board, OutputStream out) throws IOException {
+    Sink sink = open(out);
+    board(board, sink);
+    close(sink);
+  }
+
+  /** .
+   * @param player the player to write
+   * @param out the stream written to
+   * @throws IOException if the stream fails
+   */
+  public static void writePlayer(Player player, OutputStream out) throws IOException {
+    Sink sink = open(out);
+    player(player, sink);
+    close(sink);
+  }
+
+  /** .
+   * @param message the message to write
+   * @param out the stream written to
+   * @throws IOException if the stream fails
+   */
+  public static void writeMessage(Message message, OutputStream out) throws IOException {
+    Sink sink = open(out);
+    message(message, sink);
+    close(sink);
+  }
+
+  /** .
+   * @param move the move to write
+   * @param out the stream written to
+   * @throws IOException if the stream fails
+   */
+  public static void writeMove(Move move, OutputStream out) throws IOException {
+    Sink sink = open(out);
+    move(move, sink);
+    close(sink);
+  }
+
+  private static Sink open(OutputStream out) {
+    Sink sink = SINKS.get();
+    sink.out = out;
+    sink.count = 0;
+    return sink;
+  }
+
+  private static void close(Sink sink) throws IOException {
+    try {
+      sink.flush();
+    } finally {
+      sink.out = null;
+    }
+  }
+
+
+  private static void board(GameBoard board, Sink out) throws IOException {
+    out.write('{');
+    if (board.getP1() != null) {
+      writeName("p1", out);
+      player(board.getP1(), out);
+      out.write(',');
+    }
+    if (board.getP2() != null) {
+      writeName("p2", out);
+      player(board.getP2(), out);
+      out.write(',');
+    }
+    writeName("gameStarted", out);
+    writeBoolean(board.getGameStatus(), out);
+    out.write(',');
+    writeName("turn", out);
+    writeInt(board.getTurn(), out);
+    out.write(',');
+    writeName("boardState", out);
+    int size = board.getSize();
+    out.write('[');
+    for (int row = 0; row < size; row++) {
+      if (row > 0) {
+        out.write(',');
+      }
+      out.write('[');
+      for (int col = 0; col < size; col++) {
+        if (col > 0) {
+          out.write(',');
+        }
+        out.write('"');
+        writeChar(board.getPiece(row, col), out);
+        out.write('"');
+      }
+      out.write(']');
+    }
+    out.write(']');
+    out.write(',');
+    writeName("winner", out);
+    writeInt(board.getWinner(), out);
+    out.write(',');
+    writeName("isDraw", out);
+    writeBoolean(board.isGameDraw(), out);
+    if (size != BitBoard.DEFAULT_SIZE || board.getWinLength() != BitBoard.DEFAULT_WIN_LENGTH) {
+      out.write(',');
+      writeName("size", out);
+      writeInt(size, out);
+      out.write(',');
+      writeName("winLength", out);
+      writeInt(board.getWinLength(), out);
+    }
+    out.write('}');
+  }
+
+  private static void player(Player player, Sink out) throws IOException {
+    out.write('{');
+    writeName("type", out);
+    out.write('"');
+    writeChar(player.getType(), out);
+    out.write('"');
+    out.write(',');
+    writeName("id", out);
+    writeInt(player.getID(), out);
+    out.write('}');
+  }
+
+  private static void message(Message message, Sink out) throws IOException {
+    out.write('{');
+    writeName("moveValidity", out);
+    writeBoolean(message.getValidity(), out);
+    out.write(',');
+    writeName("code", out);
+    writeInt(message.getCode(), out);
+    if (message.getMessage() != null) {
+      out.write(',');
+      writeName("message", out);
+      writeString(message.getMessage(), out);
+    }
+    out.write('}');
+  }
+
+  private static void move(Move move, Sink out) throws IOException {
+    out.write('{');
+    if (move.getPlayer() != null) {
+      writeName("player", out);
+      player(move.getPlayer(), out);
+      out.write(',');
+    }
+    writeName("moveX", out);
+    writeInt(move.getX(), out);
+    out.write(',');
+    writeName("moveY", out);
+    writeInt(move.getY(), out);
+    out.write('}');
+  }
+
+  // names are ASCII without escapes
+  private static void writeName(String name, Sink out) throws IOException {
+    out.write('"');
+    for (int i = 0; i < name.length(); i++) {
+      out.write(name.charAt(i));
+    }
+    out.write('"');
+    out.write(':');
+  }
+
+  private static void writeString(String value, Sink out) throws IOException {
+    out.write('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (Character.isHighSurrogate(c) && i + 1 < value.length()
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int code = Character.toCodePoint(c, value.charAt(++i));
+        out.write(0xf0 | code >> 18);
+        out.write(0x80 | code >> 12 & 0x3f);
+        out.write(0x80 | code >> 6 & 0x3f);
+        out.write(0x80 | code & 0x3f);
+      } else {
+        writeChar(c, out);
+      }
+    }
+    out.write('"');
+  }
+
+  // one char of a string, escaped as Gson does and encoded in UTF-8
+  private static void writeChar(char c, Sink out) throws IOException {
+    switch (c) {
+      case '"':
+        out.write('\\');
+        out.write('"');
+        return;
+      case '\\':
+        out.write('\\');
+        out.write('\\');
+        return;
+      case '\t':
+        out.write('\\');
+        out.write('t');
+        return;
+      case '\b':
+        out.write('\\');
+        out.write('b');
+        return;
+      case '\n':
+        out.write('\\');
+        out.write('n');
+        return;
+      case '\r':
+        out.write('\\');
+        out.write('r');
+        return;
+      case '\f':
+        out.write('\\');
+        out.write('f');
+        return;
+      case '<':
+      case '>':
+      case '&':
+      case '=':
+      case '\'':
+      case (char) 0x2028:
+      case (char) 0x2029:
+        writeUnicodeEscape(c, out);
+        return;
+      default:
+        break;
+    }
+    if (c < 0x20) {
+      writeUnicodeEscape(c, out);
+    } else if (c < 0x80) {
+      out.write(c);
+    } else if (c < 0x800) {
+      out.write(0xc0 | c >> 6);
+      out.write(0x80 | c & 0x3f);
+    } else if (Character.isSurrogate(c)) {
+      // a lone surrogate, as String.getBytes encodes it
+      out.write('?');
+    } else {
+      out.write(0xe0 | c >> 12);
+      out.write(0x80 | c >> 6 & 0x3f);
+      out.write(0x80 | c & 0x3f);
+    }
+  }
+
+  private static void writeUnicodeEscape(char c, Sink out) throws IOException {
+    out.write('\\');
+    out.write('u');
+    out.write(HEX[c >> 12 & 0xf]);
+    out.write(HEX[c >> 8 & 0xf]);
+    out.write(HEX[c >> 4 & 0xf]);
+    out.write(HEX[c & 0xf]);
+  }
+
+  private static void writeBoolean(boolean value, Sink out) throws IOException {
+    if (value) {
+      out.write('t');
+      out.write('r');
+      out.write('u');
+      out.write('e');
+    } else {
+      out.write('f');
+      out.write('a');
+      out.write('l');
+      out.write('s');
+      out.write('e');
+    }
+  }
+
+  private static void writeInt(int value, Sink out) throws IOException {
+    long rest = value;
+    if (rest < 0) {
+      out.write('-');
+      rest = -rest;
+    }
+    long divisor = 1;
+    while (divisor * 10 <= rest) {
+      divisor *= 10;
+    }
+    for (; divisor > 0; divisor /= 10) {
+      out.write('0' + (int) (rest / divisor % 10));
+    }
+  }
+}
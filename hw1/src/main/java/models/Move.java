@@ -19,6 +19,11 @@ public class Move {
     this.moveY = y;
   }
   
+  /** get the player who makes the movement.*/
+  public Player getPlayer() {
+    return player;
+  }
+  
   /** get the x coordinate.*/
   public int getX() {
     return moveX;
@@ -1,26 +1,108 @@
 package utils;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import models.BitBoard;
 import models.GameBoard;
 import models.Move;
 import models.Player;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-public class Database {
+public class Database implements GameStore {
+
+  private static final Logger LOG = LoggerFactory.getLogger(Database.class);
   
   private Connection conn = null;
   private String boardTable = "board";
   private String playerTable = "player";
+  private final MoveJournal journal;
+  private final boolean durableAck;
+  
+  // statements of conn, the only connection writing
+  private StatementCache statements;
+  
+  // read-only connections, borrowed by recover; WAL lets them
+  // read while the journal writes
+  private final int maxReaders = Math.max(1, Integer.getInteger("db.readers", 4));
+  private final ArrayBlockingQueue<StatementCache> readers = 
+      new ArrayBlockingQueue<>(this.maxReaders);
+  private final AtomicInteger openReaders = new AtomicInteger();
+  private volatile boolean closed = false;
+  
+  // seq is the next number of the game, found through the key
+  private final String insertMove = String.format(
+      "INSERT INTO %s (row, col, playerID, gameID, seq) VALUES(?, ?, ?, ?, "
+      + "(SELECT COALESCE(MAX(seq), 0) + 1 FROM %s WHERE gameID = ?));",
+      this.boardTable, this.boardTable);
+  private final String insertPlayer = String.format(
+      "INSERT OR REPLACE INTO %s (playerID, type, gameID, boardSize, winLength) "
+      + "VALUES(?, ?, ?, ?, ?)", this.playerTable);
+  private final String selectPlayers = String.format(
+      "SELECT * FROM %s WHERE gameID = ?;", this.playerTable);
+  private final String selectMoves = String.format(
+      "SELECT * FROM %s WHERE gameID = ? AND seq > ? ORDER BY seq;", this.boardTable);
+  // the bare columns are those of the row with the largest seq
+  private final String countMoves = String.format(
+      "SELECT COUNT(*), MAX(seq), row, col, playerID FROM %s "
+      + "WHERE gameID = ? AND seq <= ?;", this.boardTable);
+  private final String selectProgress = String.format(
+      "SELECT playerID, COUNT(*), MAX(seq) FROM %s WHERE gameID = ? GROUP BY playerID;",
+      this.boardTable);
+  private final String selectGames = String.format(
+      "SELECT gameID FROM %s UNION SELECT gameID FROM %s;", this.playerTable, this.boardTable);
+  
+  // one snapshot file per game, see Snapshot
+  private final Path snapshotDir = Paths.get(System.getProperty("db.snapshots", "snapshots"));
+  
+  private final String url = "jdbc:sqlite:" + System.getProperty("db.file", "jdbcDB.db");
+  
+  // WAL, or DELETE for the rollback journal of SQLite
+  private final String journalMode = System.getProperty("db.journalMode", "WAL");
+  
+  // longest wait for the commit of a move before it is refused
+  private final long ackSeconds = Long.getLong("db.ackSeconds", 30L);
   
   /**.
-   * Constructor
+   * Constructor, configured by the system properties
+   * db.durableAck (default true), db.batchSize (default 256),
+   * db.flushMillis (default 0) and db.readers (default 4);
+   * db.file (default jdbcDB.db), db.journalMode (default WAL),
+   * db.ackSeconds (default 30) and db.snapshots (default snapshots)
+   * are read by every constructor
    */
   public Database() {
+    this(Boolean.parseBoolean(System.getProperty("db.durableAck", "true")),
+        Integer.getInteger("db.batchSize", 256),
+        Long.getLong("db.flushMillis", 0L));
+  }
+  
+  /**.
+   * @param durableAck if addMove waits until the move is committed
+   * @param batchSize most moves committed in one transaction
+   * @param flushMillis time the journal waits for more moves
+   *        before it commits a batch
+   */
+  public Database(boolean durableAck, int batchSize, long flushMillis) {
     this.createConnection();
+    this.durableAck = durableAck;
+    this.journal = new MoveJournal(this, batchSize, flushMillis);
   }
   
   /**.
@@ -37,134 +119,398 @@ public class Database {
    * Create player table and board table
    * if not exist
    */
-  public void createTable() {
+  @Override
+  public synchronized void createTable() {
     // using format to avoid security issue
+    // moves are numbered per game and both tables are clustered
+    // by game, so a game is read or deleted as one range of the key
     final String boardSql = 
         String.format("CREATE TABLE IF NOT EXISTS %s "
         + "(row INT NOT NULL," 
         + " col INT NOT NULL," 
-        + " playerID INT NOT NULL)", this.boardTable);
+        + " playerID INT NOT NULL,"
+        + " gameID TEXT NOT NULL DEFAULT '%s',"
+        + " seq INT NOT NULL,"
+        + " PRIMARY KEY (gameID, seq)) WITHOUT ROWID", this.boardTable, DEFAULT_GAME);
     this.execute(boardSql);
-    System.out.println("boardTable created successfully");
+    this.addColumn(this.boardTable, "gameID", 
+        String.format("TEXT NOT NULL DEFAULT '%s'", DEFAULT_GAME));
+    if (!this.isKeyed(this.boardTable)) {
+      // number the moves of each game in the order they were inserted
+      this.rebuild(this.boardTable, boardSql, String.format(
+          "INSERT INTO %s (row, col, playerID, gameID, seq) "
+          + "SELECT row, col, playerID, gameID, "
+          + "ROW_NUMBER() OVER (PARTITION BY gameID ORDER BY rowid) FROM %%s;",
+          this.boardTable));
+    }
+    LOG.info("boardTable created successfully");
     
     final String playerSql = 
         String.format("CREATE TABLE IF NOT EXISTS %s "
         + "(playerID INT NOT NULL," 
-        + " type CHAR NOT NULL)", this.playerTable);
+        + " type CHAR NOT NULL,"
+        + " gameID TEXT NOT NULL DEFAULT '%s',"
+        + " boardSize INT NOT NULL DEFAULT %d,"
+        + " winLength INT NOT NULL DEFAULT %d,"
+        + " PRIMARY KEY (gameID, playerID)) WITHOUT ROWID", this.playerTable, DEFAULT_GAME,
+        BitBoard.DEFAULT_SIZE, BitBoard.DEFAULT_WIN_LENGTH);
     this.execute(playerSql);
-    System.out.println("playerTable created successfully");    
+    this.addColumn(this.playerTable, "gameID", 
+        String.format("TEXT NOT NULL DEFAULT '%s'", DEFAULT_GAME));
+    this.addColumn(this.playerTable, "boardSize", 
+        String.format("INT NOT NULL DEFAULT %d", BitBoard.DEFAULT_SIZE));
+    this.addColumn(this.playerTable, "winLength", 
+        String.format("INT NOT NULL DEFAULT %d", BitBoard.DEFAULT_WIN_LENGTH));
+    if (!this.isKeyed(this.playerTable)) {
+      // the last row of a player wins, as in recover
+      this.rebuild(this.playerTable, playerSql, String.format(
+          "INSERT OR REPLACE INTO %s (playerID, type, gameID, boardSize, winLength) "
+          + "SELECT playerID, type, gameID, boardSize, winLength FROM %%s ORDER BY rowid;",
+          this.playerTable));
+    }
+    LOG.info("playerTable created successfully");    
+  }
+
+  
+  /**.
+   * @param gameId the game to be cleared
+   *        remove every move and player of one game
+   *        and leave the other games untouched
+   * @throws IllegalStateException if the rows could not be deleted
+   */
+  @Override
+  public void clearGame(String gameId) {
+    // queued moves must not come back after the delete
+    this.journal.sync();
+    Snapshot.delete(this.snapshotDir, gameId);
+    synchronized (this) {
+      this.deleteGame(this.boardTable, gameId);
+      this.deleteGame(this.playerTable, gameId);
+    }
+    LOG.debug("game cleared game={}", gameId);
   }
   
   /**.
    * drop all the tables
    */
   public void dropTable() {
+    this.journal.sync();
+    this.dropCommitted();
+  }
+  
+  /**.
+   * commit the queued moves, stop the journal
+   * and close the connection
+   */
+  @Override
+  public void close() {
+    this.journal.close();
+    this.closed = true;
+    synchronized (this) {
+      if (this.statements != null) {
+        this.statements.close();
+      }
+    }
+    StatementCache reader;
+    while ((reader = this.readers.poll()) != null) {
+      reader.close();
+    }
+  }
+  
+  private synchronized void dropCommitted() {
     final String dropBoard = String.format("DROP TABLE IF EXISTS %s;", 
         this.boardTable);
     final String dropPlayer = String.format("DROP TABLE IF EXISTS %s;", 
         this.playerTable);   
+    // cached statements of the dropped tables are prepared again
+    this.statements.clear();
+    Snapshot.deleteAll(this.snapshotDir);
     this.execute(dropBoard);
-    System.out.println("boardTable dropped successfully");  
+    LOG.info("boardTable dropped successfully");  
     this.execute(dropPlayer);
-    System.out.println("playerTable dropped successfully");  
+    LOG.info("playerTable dropped successfully");  
   }
   
   /** .
-   * @param move insert movement record to database
+   * @param move insert movement record of the default game
    */
   public void addMove(Move move) {
-    //"(row, col, playerID)"
-    String sql = String.format(
-        "INSERT INTO %s VALUES(?, ?, ?);", this.boardTable);
-    
-    PreparedStatement stmt = null;
+    this.addMove(DEFAULT_GAME, move);
+  }
+  
+  /** .
+   * @param gameId the game the movement belongs to
+   * @param move insert movement record to database
+   * @throws IllegalStateException if the move is acknowledged durably
+   *         and could not be committed within db.ackSeconds
+   */
+  @Override
+  public void addMove(String gameId, Move move) {
+    // committed in a group by the journal
+    Future<Void> done = this.journal.append(
+        gameId, move.getX(), move.getY(), move.getPlayerID());
+    if (this.durableAck) {
+      // a move that is not committed must not be acknowledged
+      try {
+        done.get(this.ackSeconds, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted before the move was committed", e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("Move not committed", e.getCause());
+      } catch (TimeoutException e) {
+        throw new IllegalStateException("Move not committed in time", e);
+      }
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("move stored game={} player={} x={} y={}",
+          gameId, move.getPlayerID(), move.getX(), move.getY());
+    }  
+  }
+  
+  /** .
+   * @param moves moves to insert in one transaction
+   * @throws SQLException if the batch was rolled back
+   */
+  synchronized void writeMoves(List<MoveJournal.Entry> moves) throws SQLException {
+    this.conn.setAutoCommit(false);
     try {
-      stmt = this.conn.prepareStatement(sql);
-      stmt.setInt(1, move.getX());
-      stmt.setInt(2, move.getY());
-      stmt.setInt(3, move.getPlayerID());
-      this.secureUpdate(stmt);
-      stmt.close();
-    } catch (Exception e) {
-      System.err.println(e.getClass().getName() + ": " + e.getMessage());
-      try { 
-        if (stmt != null) {
-          stmt.close();
+      PreparedStatement stmt = this.statements.prepare(this.insertMove);
+      for (MoveJournal.Entry move : moves) {
+        if (move.isBarrier()) {
+          continue;
         }
-      } catch (Exception e2) { 
-        ;
+        stmt.setInt(1, move.row);
+        stmt.setInt(2, move.col);
+        stmt.setInt(3, move.playerId);
+        stmt.setString(4, move.gameId);
+        stmt.setString(5, move.gameId);
+        stmt.addBatch();
       }
+      stmt.executeBatch();
+      this.conn.commit();
+    } catch (SQLException e) {
+      this.conn.rollback();
+      throw e;
+    } finally {
+      this.conn.setAutoCommit(true);
     }
-    System.out.println("update movement");  
   }
   
   
   /**.
-   * @param player player to be update
+   * @param player player of the default game to be update
    */
   public void addPlayers(Player player) {
-    String sql = String.format(
-        // (playerID, type)
-        "INSERT INTO %s VALUES(?, ?)", this.playerTable);
-    PreparedStatement stmt = null;
+    this.addPlayers(DEFAULT_GAME, player);
+  }
+  
+  /**.
+   * @param gameId the game the player joins
+   * @param player player to be update
+   */
+  public void addPlayers(String gameId, Player player) {
+    this.addPlayers(gameId, player, 
+        BitBoard.DEFAULT_SIZE, BitBoard.DEFAULT_WIN_LENGTH);
+  }
+  
+  /**.
+   * @param gameId the game the player joins
+   * @param player player to be update
+   * @param boardSize rows and columns of the board of the game
+   * @param winLength pieces in a row needed to win the game
+   * @throws IllegalStateException if the player could not be stored
+   */
+  @Override
+  public synchronized void addPlayers(String gameId, Player player, 
+      int boardSize, int winLength) {
     try {
-      stmt = this.conn.prepareStatement(sql);
+      PreparedStatement stmt = this.statements.prepare(this.insertPlayer);
       stmt.setInt(1, player.getID());
       stmt.setString(2, String.valueOf(player.getType()));
+      stmt.setString(3, gameId);
+      stmt.setInt(4, boardSize);
+      stmt.setInt(5, winLength);
       this.secureUpdate(stmt);
-      stmt.close();
-    } catch (Exception e) {
-      System.err.println(e.getClass().getName() + ": " + e.getMessage());
-      try {
-        if (stmt != null) {
-          stmt.close();
-        }
-      } catch (Exception e2) { 
-        ;
-      }
+    } catch (SQLException e) {
+      LOG.error("Cannot store player={} of game={}", player.getID(), gameId, e);
+      throw new IllegalStateException("Player not stored", e);
     }
-    System.out.println("update player");     
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("player stored game={} player={} type={}",
+          gameId, player.getID(), player.getType());
+    }     
+  }
+  
+  /**.
+   * @param board the board of the default game
+   *        recover board after crush
+   */
+  public void recover(GameBoard board) {
+    this.recover(DEFAULT_GAME, board);
   }
   
   /**.
+   * @param gameId the game to be recovered
    * @param board the board from the game
    *        recover board after crush
-   * @throws SQLException SQLexception
+   * @throws IllegalStateException if the game could not be read
    */
-  public void recover(GameBoard board) {   
-    PreparedStatement stmt = null;
+  @Override
+  public void recover(String gameId, GameBoard board) {
+    this.journal.sync();
+    this.recoverCommitted(gameId, board);
+  }
+  
+  @Override
+  public Set<String> gameIds() {
+    this.journal.sync();
+    Set<String> ids = new HashSet<>();
+    StatementCache reader = null;
+    try {
+      reader = this.borrowReader();
+      try (ResultSet rs = reader.prepare(this.selectGames).executeQuery()) {
+        while (rs.next()) {
+          ids.add(rs.getString(1));
+        }
+      }
+    } catch (Exception e) {
+      LOG.error("Cannot list the games", e);
+    } finally {
+      if (reader != null) {
+        this.returnReader(reader);
+      }
+    }
+    return ids;
+  }
+  
+  /**.
+   * @param gameId the game to snapshot
+   * @param board the board of the game, holding every move
+   *        persisted so far; the caller keeps moves out meanwhile
+   */
+  @Override
+  public void snapshot(String gameId, GameBoard board) {
+    this.journal.sync();
+    long seq = 0;
+    int[] counts = {0, 0};
+    StatementCache reader = null;
     ResultSet rs = null;
-    // mapping[0] is p1, mapping[1] is p2
-    char[] mapping = {'\u0000', '\u0000'};
     try {
-      // row, col, playerID
-      final String sql = String.format(
-          "SELECT * FROM %s;", this.playerTable);
-      stmt = this.conn.prepareStatement(sql);
-      rs = this.secureQuery(stmt);
-      
-      // track number of movement for different
-      // counts[0] is p1, counts[1] is p2
+      reader = this.borrowReader();
+      PreparedStatement stmt = reader.prepare(this.selectProgress);
+      stmt.setString(1, gameId);
+      rs = stmt.executeQuery();
       while (rs.next()) {
-        int id = rs.getInt("playerID");
-        char type = rs.getString("type").charAt(0);
-        mapping[id - 1] = type;
+        counts[rs.getInt(1) - 1] = rs.getInt(2);
+        seq = Math.max(seq, rs.getLong(3));
       }
       rs.close();
-      stmt.close();
     } catch (Exception e) {
-      // may have drop issue
-      System.out.println(e.getClass().getName() + ": " + e.getMessage());
-      try {
-        if (stmt != null) {
-          stmt.close();
+      LOG.warn("Cannot read the progress of game={}", gameId, e);
+      return;
+    } finally {
+      if (reader != null) {
+        this.returnReader(reader);
+      }
+    }
+    // nothing to save, or the board is not the persisted game
+    int moves = counts[0] + counts[1];
+    if (moves == 0 || moves != board.getPieceCount()) {
+      return;
+    }
+    try {
+      Snapshot.of(seq, counts, board).save(this.snapshotDir, gameId);
+    } catch (IOException e) {
+      LOG.warn("Cannot save the snapshot of game={}", gameId, e);
+    }
+  }
+  
+  /**.
+   * @return if the moves up to the snapshot are still the ones
+   *         it was taken from, not reset or dropped since:
+   *         same count, same last move and same players
+   */
+  private boolean isCurrent(StatementCache reader, String gameId, Snapshot snapshot) {
+    try {
+      PreparedStatement stmt = reader.prepare(this.countMoves);
+      stmt.setString(1, gameId);
+      stmt.setLong(2, snapshot.getSeq());
+      try (ResultSet rs = stmt.executeQuery()) {
+        if (!rs.next() || rs.getInt(1) != snapshot.getMoves()
+            || rs.getLong(2) != snapshot.getSeq()
+            || !snapshot.hasMove(rs.getInt(3), rs.getInt(4), rs.getInt(5))) {
+          return false;
         }
-        if (rs != null) {
-          rs.close();
+      }
+      // a game restarted with other players may have as many moves
+      char[] mapping = {'\u0000', '\u0000'};
+      int boardSize = BitBoard.DEFAULT_SIZE;
+      int winLength = BitBoard.DEFAULT_WIN_LENGTH;
+      stmt = reader.prepare(this.selectPlayers);
+      stmt.setString(1, gameId);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          mapping[rs.getInt("playerID") - 1] = rs.getString("type").charAt(0);
+          boardSize = rs.getInt("boardSize");
+          winLength = rs.getInt("winLength");
         }
-      } catch (SQLException e1) {
-        e1.printStackTrace();
       }
+      return snapshot.hasPlayers(mapping, boardSize, winLength);
+    } catch (SQLException e) {
+      LOG.warn("Cannot check the snapshot of game={}", gameId, e);
+      return false;
+    }
+  }
+  
+  private void recoverCommitted(String gameId, GameBoard board) {   
+    StatementCache reader;
+    try {
+      reader = this.borrowReader();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted before game " + gameId + " was recovered", e);
+    } catch (SQLException e) {
+      throw new IllegalStateException("Cannot recover game " + gameId, e);
+    }
+    try {
+      this.recoverFrom(reader, gameId, board);
+    } catch (SQLException e) {
+      // a partial board must not be played on
+      throw new IllegalStateException("Cannot recover game " + gameId, e);
+    } finally {
+      this.returnReader(reader);
+    }
+  }
+  
+  /**.
+   * @return the piece of player 1 and of player 2
+   *         after putting the players on the board
+   * @throws SQLException if the players could not be read
+   */
+  private char[] recoverPlayers(StatementCache reader, String gameId, GameBoard board) 
+      throws SQLException {
+    // mapping[0] is p1, mapping[1] is p2
+    char[] mapping = {'\u0000', '\u0000'};
+    int boardSize = BitBoard.DEFAULT_SIZE;
+    int winLength = BitBoard.DEFAULT_WIN_LENGTH;
+    // statements belong to the reader, only the results are closed
+    PreparedStatement stmt = reader.prepare(this.selectPlayers);
+    stmt.setString(1, gameId);
+    try (ResultSet rs = this.secureQuery(stmt)) {
+      while (rs.next()) {
+        int id = rs.getInt("playerID");
+        char type = rs.getString("type").charAt(0);
+        mapping[id - 1] = type;
+        boardSize = rs.getInt("boardSize");
+        winLength = rs.getInt("winLength");
+      }
+    }
+    
+    // the board chosen when player 1 started the game
+    if (BitBoard.isValidShape(boardSize, winLength)
+        && (boardSize != board.getSize() || winLength != board.getWinLength())) {
+      board.setDimensions(boardSize, winLength);
     }
     
     // set player 1 and player 2
@@ -187,16 +533,31 @@ public class Database {
     } else {
       board.setGameStatus(true);
     }
-    
+    return mapping;
+  }
+  
+  private void recoverFrom(StatementCache reader, String gameId, GameBoard board) 
+      throws SQLException {
     // counting the number of movement
+    // counts[0] is p1, counts[1] is p2
     int[] counts = {0, 0};
-    try {      
-      // row, col, playerID
-      final String sql = String.format(
-          "SELECT * FROM %s;", this.boardTable);
-      stmt = this.conn.prepareStatement(sql);
-      rs = this.secureQuery(stmt);
-      
+    long after = 0;
+    char[] mapping;
+    Snapshot snapshot = Snapshot.load(this.snapshotDir, gameId);
+    if (snapshot != null && this.isCurrent(reader, gameId, snapshot)) {
+      // only the moves after the snapshot are replayed
+      mapping = snapshot.restore(board);
+      counts = snapshot.getCounts();
+      after = snapshot.getSeq();
+    } else {
+      mapping = this.recoverPlayers(reader, gameId, board);
+    }
+    
+    // row, col, playerID
+    PreparedStatement stmt = reader.prepare(this.selectMoves);
+    stmt.setString(1, gameId);
+    stmt.setLong(2, after);
+    try (ResultSet rs = this.secureQuery(stmt)) {
       // track number of movement for different
       // counts[0] is p1, counts[1] is p2
       while (rs.next()) {        
@@ -207,21 +568,6 @@ public class Database {
         // set board status
         board.setPiece(x, y, mapping[id - 1]);
       }
-      rs.close();
-      stmt.close();
-    } catch (Exception e) {
-      System.out.println(e.getClass().getName() + ": " + e.getMessage());
-      try {
-        if (stmt != null) {
-          stmt.close();
-        }
-        if (rs != null) {
-          rs.close();
-        }
-      } catch (SQLException e1) {
-        e1.printStackTrace();
-      }
-
     }
     
     int turn = 0;
@@ -230,7 +576,7 @@ public class Database {
     } else if (counts[0] == counts[1] + 1) {
       turn = 2;
     } else {
-      System.out.println("counts[0] and counts[1] relation wrong!");
+      LOG.warn("counts[0] and counts[1] relation wrong! game={}", gameId);
     }
     
     // set turn
@@ -239,7 +585,7 @@ public class Database {
     // update status for win and isDraw
     board.update();
     
-    System.out.println("recover completes");
+    LOG.debug("recover completes game={}", gameId);
   }
   
   /**.
@@ -248,69 +594,207 @@ public class Database {
    *        using statement
    */
   private void execute(String sql) {
+    try (Statement stmt = this.conn.createStatement()) {
+      stmt.executeUpdate(sql);
+    } catch (Exception e) {
+      LOG.error("Cannot execute {}", sql, e);
+    }
+  }
+  
+  /**.
+   * @param table table created by an older version
+   * @param column column to add if it is missing
+   * @param definition type and default of the column,
+   *        the default is given to the existing rows
+   */
+  private void addColumn(String table, String column, String definition) {
     Statement stmt = null;
+    ResultSet rs = null;
+    boolean found = false;
     try {
       stmt = this.conn.createStatement();
-      stmt.executeUpdate(sql);
+      rs = stmt.executeQuery(String.format("PRAGMA table_info(%s);", table));
+      while (rs.next()) {
+        if (column.equals(rs.getString("name"))) {
+          found = true;
+        }
+      }
+      rs.close();
       stmt.close();
     } catch (Exception e) {
-      System.err.println(e.getClass().getName() + ": " + e.getMessage());
+      LOG.error("Cannot read the columns of {}", table, e);
       try {
+        if (rs != null) {
+          rs.close();
+        }
         if (stmt != null) {
           stmt.close();
         }
       } catch (SQLException e1) {
-        e1.printStackTrace();
+        LOG.warn("Cannot close the columns of {}", table, e1);
       }
-      //System.exit(0);
+      return;
+    }
+    if (!found) {
+      this.execute(String.format(
+          "ALTER TABLE %s ADD COLUMN %s %s;", table, column, definition));
     }
   }
   
   /**.
-   * @param stmt the statement to be update.
-   * @return the result set
-   *        Note that rs may by null
+   * @param table table created by an older version
+   * @return if the table has a primary key
    */
-  private void secureUpdate(PreparedStatement stmt) {
-    // Using pareparedStatement to avoid security problems
+  private boolean isKeyed(String table) {
+    boolean keyed = false;
+    try (Statement stmt = this.conn.createStatement();
+        ResultSet rs = stmt.executeQuery(String.format("PRAGMA table_info(%s);", table))) {
+      while (rs.next()) {
+        keyed |= rs.getInt("pk") > 0;
+      }
+    } catch (SQLException e) {
+      LOG.error("Cannot read the key of {}", table, e);
+    }
+    return keyed;
+  }
+  
+  /**.
+   * @param table table created by an older version, without a key
+   * @param schema creates the table with its current schema
+   * @param copy copies the rows from the old table, named by %s
+   *        the old table is replaced in one transaction
+   */
+  private void rebuild(String table, String schema, String copy) {
+    final String old = table + "_old";
+    Statement stmt = null;
     try {
-      stmt.executeUpdate();
-    } catch (Exception e) {
-      System.err.println(e.getClass().getName() + ": " + e.getMessage());
+      this.conn.setAutoCommit(false);
+      stmt = this.conn.createStatement();
+      stmt.executeUpdate(String.format("ALTER TABLE %s RENAME TO %s;", table, old));
+      stmt.executeUpdate(schema);
+      stmt.executeUpdate(String.format(copy, old));
+      stmt.executeUpdate(String.format("DROP TABLE %s;", old));
+      this.conn.commit();
+      stmt.close();
+      LOG.info("{} migrated successfully", table);
+    } catch (SQLException e) {
+      LOG.error("Cannot migrate {}", table, e);
+      try {
+        this.conn.rollback();
+        if (stmt != null) {
+          stmt.close();
+        }
+      } catch (SQLException e1) {
+        LOG.warn("Cannot roll back the migration of {}", table, e1);
+      }
+    } finally {
+      try {
+        this.conn.setAutoCommit(true);
+      } catch (SQLException e) {
+        LOG.warn("Cannot restore autocommit after migrating {}", table, e);
+      }
+    }
+  }
+  
+  /**.
+   * @param table table to delete from
+   * @param gameId rows of this game are deleted
+   * @throws IllegalStateException if the rows could not be deleted
+   */
+  private void deleteGame(String table, String gameId) {
+    final String sql = String.format(
+        "DELETE FROM %s WHERE gameID = ?;", table);
+    try {
+      PreparedStatement stmt = this.statements.prepare(sql);
+      stmt.setString(1, gameId);
+      this.secureUpdate(stmt);
+    } catch (SQLException e) {
+      throw new IllegalStateException("Cannot delete game " + gameId + " from " + table, e);
     }
+  }
+  
+  /**.
+   * @param stmt the statement to be update.
+   * @throws SQLException if the update failed
+   */
+  private void secureUpdate(PreparedStatement stmt) throws SQLException {
+    // Using pareparedStatement to avoid security problems
+    stmt.executeUpdate();
   } 
   
   
   /**.
    * @param stmt the statement to be query.
    * @return the result set
-   *        Note that rs may by null
+   * @throws SQLException if the query failed
    */
-  private ResultSet secureQuery(PreparedStatement stmt) {
+  private ResultSet secureQuery(PreparedStatement stmt) throws SQLException {
     // Using pareparedStatement to avoid security problems
-    ResultSet rs = null;
-    try {
-      rs = stmt.executeQuery();
-    } catch (Exception e) {
-      System.err.println(e.getClass().getName() + ": " + e.getMessage());
-    }
-    return rs;
+    return stmt.executeQuery();
   }
   
   /** .
    * create database connection and store
    * in the private variable
    */
-  private void createConnection() {
+  private synchronized void createConnection() {
     try {
       Class.forName("org.sqlite.JDBC");
-      conn = DriverManager.getConnection("jdbc:sqlite:jdbcDB.db");
+      if (this.statements != null) {
+        this.statements.close();
+      }
+      conn = this.open();
+      this.statements = new StatementCache(conn);
     } catch (Exception e) {
-      System.err.println(e.getClass().getName() + ": " + e.getMessage());
-      //System.exit(0);
+      LOG.error("Cannot open the database {}", this.url, e);
       return;
     }
-    System.out.println("Opened database successfully");    
+    LOG.info("Opened database successfully");    
+  }
+  
+  /** .
+   * @return a new connection in WAL mode, so that readers
+   *         do not wait for the writer and the other way round,
+   *         unless db.journalMode asks for another journal
+   * @throws SQLException if the database cannot be opened
+   */
+  private Connection open() throws SQLException {
+    Connection conn = DriverManager.getConnection(this.url);
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("PRAGMA journal_mode=" + this.journalMode + ";");
+      stmt.execute("PRAGMA busy_timeout=5000;");
+    }
+    return conn;
+  }
+  
+  /** .
+   * @return a reader of the pool, opened if there are
+   *         fewer than db.readers, waited for otherwise
+   * @throws SQLException if a reader cannot be opened
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private StatementCache borrowReader() throws SQLException, InterruptedException {
+    StatementCache reader = this.readers.poll();
+    if (reader != null) {
+      return reader;
+    }
+    if (this.openReaders.incrementAndGet() <= this.maxReaders) {
+      try {
+        return new StatementCache(this.open());
+      } catch (SQLException e) {
+        this.openReaders.decrementAndGet();
+        throw e;
+      }
+    }
+    this.openReaders.decrementAndGet();
+    return this.readers.take();
+  }
+  
+  private void returnReader(StatementCache reader) {
+    if (this.closed || !this.readers.offer(reader)) {
+      reader.close();
+      this.openReaders.decrementAndGet();
+    }
   }
   
 }
@@ -0,0 +1,66 @@
+package utils;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** Forcing files to disk beyond what the channels do by themselves. */
+final class DiskSync {
+
+  // MappedByteBuffer.force(int, int), Java 13 or later; null before
+  private static final MethodHandle FORCE_RANGE = forceRange();
+
+  private DiskSync() {
+  }
+
+  /** .
+   * @param dir directory whose entries, such as a file just renamed
+   *        into it, are forced to disk. Not every platform can open
+   *        a directory; there the rename is left to the file system
+   */
+  static void directory(Path dir) {
+    try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException e) {
+      // directories cannot be opened on Windows
+    }
+  }
+
+  /** .
+   * @param mapped the mapping to force
+   * @param index first byte to force
+   * @param length bytes to force, the whole mapping before Java 13
+   */
+  static void force(MappedByteBuffer mapped, int index, int length) {
+    if (length <= 0) {
+      return;
+    }
+    if (FORCE_RANGE == null) {
+      mapped.force();
+      return;
+    }
+    try {
+      // invokeExact needs the exact return type
+      MappedByteBuffer forced = (MappedByteBuffer) FORCE_RANGE.invokeExact(mapped, index, length);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  // looked up at runtime so that the build still targets Java 11
+  private static MethodHandle forceRange() {
+    try {
+      return MethodHandles.publicLookup().findVirtual(MappedByteBuffer.class, "force",
+          MethodType.methodType(MappedByteBuffer.class, int.class, int.class));
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+}
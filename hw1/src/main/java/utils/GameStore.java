@@ -0,0 +1,81 @@
+package utils;
+
+import java.util.Set;
+import models.GameBoard;
+import models.Move;
+import models.Player;
+
+/** Where the games are persisted so they survive a crash.
+ * {@link Database} keeps them in SQLite, {@link MoveLog} in an
+ * append-only binary file; the store is chosen with the system
+ * property store ("sqlite" or "log", default "sqlite").
+ */
+public interface GameStore {
+
+  /** game id used by the original single-game routes. */
+  String DEFAULT_GAME = "default";
+
+  /** .
+   * @return the store chosen by the system property store
+   */
+  static GameStore fromProperties() {
+    if ("log".equals(System.getProperty("store", "sqlite"))) {
+      return new MoveLog();
+    }
+    return new Database();
+  }
+
+  /** create the storage if it does not exist.*/
+  void createTable();
+
+  /** .
+   * @param gameId the game to be cleared
+   *        later recoveries of the game start from an empty board
+   * @throws RuntimeException if the game could not be cleared;
+   *         its board must be left as it was then
+   */
+  void clearGame(String gameId);
+
+  /** .
+   * @param gameId the game the movement belongs to
+   * @param move movement to persist
+   * @throws RuntimeException if the move could not be persisted;
+   *         the move must not be acknowledged then
+   */
+  void addMove(String gameId, Move move);
+
+  /** .
+   * @param gameId the game the player joins
+   * @param player player to persist
+   * @param boardSize rows and columns of the board of the game
+   * @param winLength pieces in a row needed to win the game
+   * @throws RuntimeException if the player could not be persisted;
+   *         the player must not be acknowledged then
+   */
+  void addPlayers(String gameId, Player player, int boardSize, int winLength);
+
+  /** .
+   * @param gameId the game to be recovered
+   * @param board an empty board, filled with the persisted game
+   * @throws RuntimeException if the game could not be read;
+   *         the board may then hold part of it and must not be played on
+   */
+  void recover(String gameId, GameBoard board);
+
+  /** .
+   * @return the id of every game with a player or a move
+   */
+  Set<String> gameIds();
+
+  /** .
+   * @param gameId the game to snapshot
+   * @param board the board of the game, holding every move persisted
+   *        so far; recover may start from it and replay only later moves.
+   *        Stores that replay quickly ignore it
+   */
+  default void snapshot(String gameId, GameBoard board) {
+  }
+
+  /** persist what is pending and release the storage.*/
+  void close();
+}
@@ -0,0 +1,182 @@
+package utils;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/** Timers, gauges and counters of the server, written out in the
+ * Prometheus text format by {@link #scrape()}.
+ * A timer is a histogram of durations in seconds over fixed buckets;
+ * recording adds to striped counters and never takes a lock.
+ * Gauges and counters read their value when scraped.
+ */
+public final class Metrics {
+
+  private static final Metrics REGISTRY = new Metrics();
+
+  // upper bounds of the buckets, in seconds
+  private static final double[] BUCKETS = {
+      0.00001, 0.000025, 0.00005, 0.0001, 0.00025, 0.0005,
+      0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5};
+
+  private static final long[] BUCKET_NANOS = new long[BUCKETS.length];
+
+  static {
+    for (int i = 0; i < BUCKETS.length; i++) {
+      BUCKET_NANOS[i] = (long) (BUCKETS[i] * TimeUnit.SECONDS.toNanos(1));
+    }
+  }
+
+  // by name, so that the scrape is sorted
+  private final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+  /** One metric family of the scrape. */
+  private abstract static class Metric {
+
+    private final String help;
+
+    private final String type;
+
+    private Metric(String help, String type) {
+      this.help = help;
+      this.type = type;
+    }
+
+    abstract void write(String name, StringBuilder out);
+  }
+
+  /** Histogram of durations. */
+  public static final class Timer extends Metric {
+
+    // one more for the durations above the last bound
+    private final LongAdder[] buckets = new LongAdder[BUCKETS.length + 1];
+
+    private final LongAdder nanos = new LongAdder();
+
+    private Timer(String help) {
+      super(help, "histogram");
+      for (int i = 0; i < this.buckets.length; i++) {
+        this.buckets[i] = new LongAdder();
+      }
+    }
+
+    /** .
+     * @param duration nanoseconds taken, usually the difference of two
+     *        {@link System#nanoTime()}
+     */
+    public void record(long duration) {
+      int bucket = 0;
+      while (bucket < BUCKET_NANOS.length && duration > BUCKET_NANOS[bucket]) {
+        bucket++;
+      }
+      this.buckets[bucket].increment();
+      this.nanos.add(duration);
+    }
+
+    /** .
+     * @param start the {@link System#nanoTime()} when the timed work began
+     */
+    public void recordSince(long start) {
+      this.record(System.nanoTime() - start);
+    }
+
+    /** .
+     * @return number of durations recorded
+     */
+    public long count() {
+      long count = 0;
+      for (LongAdder bucket : this.buckets) {
+        count += bucket.sum();
+      }
+      return count;
+    }
+
+    @Override
+    void write(String name, StringBuilder out) {
+      long cumulative = 0;
+      for (int i = 0; i < this.buckets.length; i++) {
+        cumulative += this.buckets[i].sum();
+        String bound = i < BUCKETS.length
+            ? BigDecimal.valueOf(BUCKETS[i]).stripTrailingZeros().toPlainString() : "+Inf";
+        out.append(name).append("_bucket{le=\"").append(bound).append("\"} ")
+            .append(cumulative).append('\n');
+      }
+      out.append(name).append("_sum ")
+          .append(this.nanos.sum() / (double) TimeUnit.SECONDS.toNanos(1)).append('\n');
+      out.append(name).append("_count ").append(cumulative).append('\n');
+    }
+  }
+
+  /** Value read when scraped. */
+  private static final class Sampled extends Metric {
+
+    private final LongSupplier value;
+
+    private Sampled(String help, String type, LongSupplier value) {
+      super(help, type);
+      this.value = value;
+    }
+
+    @Override
+    void write(String name, StringBuilder out) {
+      out.append(name).append(' ').append(this.value.getAsLong()).append('\n');
+    }
+  }
+
+  /** .
+   * @return the registry of the server
+   */
+  public static Metrics registry() {
+    return REGISTRY;
+  }
+
+  /** .
+   * @param name name of the timer, ending in _seconds
+   * @param help what is timed
+   * @return the timer of the name, registered on the first call
+   */
+  public Timer timer(String name, String help) {
+    Metric metric = this.metrics.computeIfAbsent(name, n -> new Timer(help));
+    if (!(metric instanceof Timer)) {
+      throw new IllegalArgumentException(name + " is not a timer");
+    }
+    return (Timer) metric;
+  }
+
+  /** .
+   * @param name name of the gauge
+   * @param help what is measured
+   * @param value read on every scrape; replaces the one registered before
+   */
+  public void gauge(String name, String help, LongSupplier value) {
+    this.metrics.put(name, new Sampled(help, "gauge", value));
+  }
+
+  /** .
+   * @param name name of the counter, ending in _total
+   * @param help what is counted
+   * @param value read on every scrape, never decreasing;
+   *        replaces the one registered before
+   */
+  public void counter(String name, String help, LongSupplier value) {
+    this.metrics.put(name, new Sampled(help, "counter", value));
+  }
+
+  /** .
+   * @return every metric in the Prometheus text format 0.0.4
+   */
+  public String scrape() {
+    StringBuilder out = new StringBuilder();
+    for (Map.Entry<String, Metric> entry : this.metrics.entrySet()) {
+      String name = entry.getKey();
+      Metric metric = entry.getValue();
+      out.append("# HELP ").append(name).append(' ').append(metric.help).append('\n');
+      out.append("# TYPE ").append(name).append(' ').append(metric.type).append('\n');
+      metric.write(name, out);
+    }
+    return out.toString();
+  }
+}
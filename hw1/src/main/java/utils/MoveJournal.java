@@ -0,0 +1,196 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Write-behind queue of moves.
+ * Moves are appended by the request threads and committed by one
+ * background thread in grouped transactions: everything queued while
+ * the previous transaction was running goes into the next one, up to
+ * the batch size, optionally waiting a little for more moves.
+ */
+public class MoveJournal {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MoveJournal.class);
+
+  /** One queued move, or a barrier when row is negative. */
+  static final class Entry {
+
+    final String gameId;
+
+    final int row;
+
+    final int col;
+
+    final int playerId;
+
+    final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    Entry(String gameId, int row, int col, int playerId) {
+      this.gameId = gameId;
+      this.row = row;
+      this.col = col;
+      this.playerId = playerId;
+    }
+
+    boolean isBarrier() {
+      return this.row < 0;
+    }
+  }
+
+  private static final long POLL_MILLIS = 100;
+
+  private final LinkedBlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+
+  private final Database db;
+
+  private final int batchSize;
+
+  private final long flushMillis;
+
+  private final Thread writer;
+
+  private volatile boolean running = true;
+
+  // appends share it, close takes it alone: no move is queued
+  // once the writer may have drained the queue for the last time
+  private final ReadWriteLock closing = new ReentrantReadWriteLock();
+
+  /** .
+   * @param db database the batches are written to
+   * @param batchSize most moves per transaction
+   * @param flushMillis time to wait for more moves before a commit
+   */
+  MoveJournal(Database db, int batchSize, long flushMillis) {
+    this.db = db;
+    this.batchSize = Math.max(1, batchSize);
+    this.flushMillis = Math.max(0, flushMillis);
+    this.writer = new Thread(this::run, "move-journal");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  /** .
+   * @param gameId game of the move
+   * @param row row of the move
+   * @param col column of the move
+   * @param playerId player of the move
+   * @return completed once the move is committed
+   */
+  public CompletableFuture<Void> append(String gameId, int row, int col, int playerId) {
+    Entry entry = new Entry(gameId, row, col, playerId);
+    this.closing.readLock().lock();
+    try {
+      if (!this.running) {
+        entry.done.completeExceptionally(new IllegalStateException("Journal closed"));
+        return entry.done;
+      }
+      this.queue.add(entry);
+    } finally {
+      this.closing.readLock().unlock();
+    }
+    return entry.done;
+  }
+
+  /** wait until every move appended before is committed.
+   * @throws IllegalStateException if one of them could not be committed
+   */
+  public void sync() {
+    if (!this.running || Thread.currentThread() == this.writer) {
+      return;
+    }
+    try {
+      this.append(null, -1, -1, 0).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted before the journal was committed", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Journal not committed", e.getCause());
+    }
+  }
+
+  /** .
+   * @return number of moves waiting to be committed
+   */
+  public int pending() {
+    return this.queue.size();
+  }
+
+  /** commit the queued moves and stop the writer.
+   * Moves the writer did not commit in time are failed.
+   */
+  public void close() {
+    try {
+      this.sync();
+    } catch (IllegalStateException e) {
+      LOG.error("Cannot commit the journal before closing", e);
+    }
+    this.closing.writeLock().lock();
+    try {
+      this.running = false;
+    } finally {
+      this.closing.writeLock().unlock();
+    }
+    try {
+      this.writer.join(TimeUnit.SECONDS.toMillis(5));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    Entry left;
+    while ((left = this.queue.poll()) != null) {
+      left.done.completeExceptionally(new IllegalStateException("Journal closed"));
+    }
+  }
+
+  private void run() {
+    List<Entry> batch = new ArrayList<>();
+    while (this.running || !this.queue.isEmpty()) {
+      try {
+        Entry first = this.queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        this.queue.drainTo(batch, this.batchSize - 1);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.flushMillis);
+        while (batch.size() < this.batchSize) {
+          long wait = deadline - System.nanoTime();
+          Entry next = wait > 0 ? this.queue.poll(wait, TimeUnit.NANOSECONDS) : null;
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+      } catch (InterruptedException e) {
+        this.running = false;
+      }
+      this.commit(batch);
+      batch.clear();
+    }
+  }
+
+  private void commit(List<Entry> batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    try {
+      this.db.writeMoves(batch);
+      for (Entry entry : batch) {
+        entry.done.complete(null);
+      }
+    } catch (Exception e) {
+      LOG.error("Cannot commit {} moves", batch.size(), e);
+      for (Entry entry : batch) {
+        entry.done.completeExceptionally(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,441 @@
+package utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import models.BitBoard;
+import models.GameBoard;
+import models.Move;
+import models.Player;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Append-only log of the games in a memory-mapped file.
+ * Every player, move and reset is one record of {@link #RECORD_SIZE}
+ * bytes ending with the CRC32 of the bytes before it:
+ * type (1), game id length (1), game id (64), four ints, padding, CRC (4).
+ * Replay stops at the first empty or corrupt record, so a record torn
+ * by a crash is dropped with everything after it.
+ * Appends are copies into the mapping; an acknowledged append waits
+ * for a flush of the records appended since the last one, and
+ * appenders waiting together share one flush.
+ * A reset makes the earlier records of its game dead: when the log is
+ * out of room and at least half of it is dead, or it cannot grow any
+ * more, the live records are copied to a new file that replaces the
+ * log atomically.
+ */
+public class MoveLog implements GameStore {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MoveLog.class);
+
+  /** bytes of one record. */
+  static final int RECORD_SIZE = 96;
+
+  private static final int MAX_ID = 64;
+
+  private static final int TYPE = 0;
+
+  private static final int ID_LENGTH = 1;
+
+  private static final int ID = 2;
+
+  private static final int FIELDS = ID + MAX_ID;
+
+  private static final int CRC = RECORD_SIZE - 4;
+
+  private static final byte MOVE = 1;
+
+  private static final byte PLAYER = 2;
+
+  private static final byte CLEAR = 3;
+
+  // the mapping grows by this many bytes
+  private static final int GROWTH = RECORD_SIZE * 16384;
+
+  private final Path path;
+
+  // largest size of the file
+  private final int maxSize;
+
+  private FileChannel channel;
+
+  private final boolean durableAck;
+
+  private final Object flushLock = new Object();
+
+  private final byte[] scratch = new byte[RECORD_SIZE];
+
+  private final CRC32 crc = new CRC32();
+
+  // record offsets of each game since its last reset
+  private final Map<String, List<Integer>> games = new HashMap<>();
+
+  // bytes appended since the log was opened, never reset by a compaction,
+  // and how many of them are known to be on disk
+  private final AtomicLong durable = new AtomicLong();
+
+  private long appended;
+
+  private MappedByteBuffer buffer;
+
+  // bytes of valid records, appended under the monitor
+  private int end;
+
+  // records indexed in games, the others are dead
+  private int live;
+
+  // bytes of the mapping forced to disk
+  private int forced;
+
+  /**.
+   * Constructor, the file is the system property store.log
+   * (default moves.log), acknowledged as db.durableAck (default true)
+   */
+  public MoveLog() {
+    this(Paths.get(System.getProperty("store.log", "moves.log")),
+        Boolean.parseBoolean(System.getProperty("db.durableAck", "true")));
+  }
+
+  /**.
+   * @param path file of the log, created if missing and replayed otherwise
+   * @param durableAck if an append returns only once it is on disk;
+   *        without it appends still survive a crash of the process,
+   *        not of the machine
+   */
+  public MoveLog(Path path, boolean durableAck) {
+    this(path, durableAck, Integer.MAX_VALUE);
+  }
+
+  /**.
+   * @param path file of the log, created if missing and replayed otherwise
+   * @param durableAck if an append returns only once it is on disk
+   * @param maxSize largest size of the file in bytes, at most 2 GB;
+   *        an append that does not fit even after a compaction fails
+   */
+  public MoveLog(Path path, boolean durableAck, int maxSize) {
+    this.path = path;
+    this.durableAck = durableAck;
+    this.maxSize = Math.max(RECORD_SIZE, maxSize);
+    try {
+      this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+          StandardOpenOption.READ, StandardOpenOption.WRITE);
+      long size = Math.max(this.channel.size(), Math.min(GROWTH, this.maxSize));
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("Move log too large: " + size);
+      }
+      this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    this.replay();
+    LOG.info("Opened move log successfully");
+  }
+
+  @Override
+  public void createTable() {
+    // the file is created when the log is opened
+  }
+
+  @Override
+  public void clearGame(String gameId) {
+    this.append(CLEAR, gameId, 0, 0, 0, 0);
+    LOG.debug("game cleared game={}", gameId);
+  }
+
+  @Override
+  public void addMove(String gameId, Move move) {
+    this.append(MOVE, gameId, move.getX(), move.getY(), move.getPlayerID(), 0);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("move stored game={} player={} x={} y={}",
+          gameId, move.getPlayerID(), move.getX(), move.getY());
+    }
+  }
+
+  @Override
+  public void addPlayers(String gameId, Player player, int boardSize, int winLength) {
+    this.append(PLAYER, gameId, player.getID(), player.getType(), boardSize, winLength);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("player stored game={} player={} type={}",
+          gameId, player.getID(), player.getType());
+    }
+  }
+
+  @Override
+  public synchronized void recover(String gameId, GameBoard board) {
+    List<Integer> records = this.games.getOrDefault(gameId, new ArrayList<>());
+    // mapping[0] is p1, mapping[1] is p2
+    char[] mapping = {'\u0000', '\u0000'};
+    int boardSize = BitBoard.DEFAULT_SIZE;
+    int winLength = BitBoard.DEFAULT_WIN_LENGTH;
+    for (int position : records) {
+      if (this.buffer.get(position + TYPE) == PLAYER) {
+        mapping[this.field(position, 0) - 1] = (char) this.field(position, 1);
+        boardSize = this.field(position, 2);
+        winLength = this.field(position, 3);
+      }
+    }
+    if (BitBoard.isValidShape(boardSize, winLength)
+        && (boardSize != board.getSize() || winLength != board.getWinLength())) {
+      board.setDimensions(boardSize, winLength);
+    }
+    if (mapping[0] != '\u0000') {
+      board.setPlayer1(new Player(mapping[0], 1));
+    }
+    if (mapping[1] != '\u0000') {
+      board.setPlayer2(new Player(mapping[1], 2));
+    }
+    board.setGameStatus(mapping[0] != '\u0000' && mapping[1] != '\u0000');
+
+    // counts[0] is p1, counts[1] is p2
+    int[] counts = {0, 0};
+    for (int position : records) {
+      if (this.buffer.get(position + TYPE) == MOVE) {
+        int id = this.field(position, 2);
+        counts[id - 1]++;
+        board.setPiece(this.field(position, 0), this.field(position, 1), mapping[id - 1]);
+      }
+    }
+    board.setTurn(counts[0] == counts[1] ? 1 : 2);
+    board.update();
+    LOG.debug("recover completes game={}", gameId);
+  }
+
+  @Override
+  public synchronized Set<String> gameIds() {
+    return new HashSet<>(this.games.keySet());
+  }
+
+  @Override
+  public void close() {
+    this.flush(Long.MAX_VALUE);
+    try {
+      this.channel.close();
+    } catch (IOException e) {
+      LOG.warn("Cannot close the move log", e);
+    }
+  }
+
+  /** .
+   * @return bytes of valid records in the log
+   */
+  public synchronized int size() {
+    return this.end;
+  }
+
+  private void append(byte type, String gameId, int a, int b, int c, int d) {
+    byte[] id = gameId.getBytes(StandardCharsets.UTF_8);
+    if (id.length == 0 || id.length > MAX_ID) {
+      throw new IllegalArgumentException("Invalid game id: " + gameId);
+    }
+    long appended;
+    synchronized (this) {
+      this.ensureCapacity();
+      int position = this.end;
+      ByteBuffer record = ByteBuffer.wrap(this.scratch);
+      record.put(TYPE, type);
+      record.put(ID_LENGTH, (byte) id.length);
+      System.arraycopy(id, 0, this.scratch, ID, id.length);
+      for (int i = ID + id.length; i < FIELDS; i++) {
+        this.scratch[i] = 0;
+      }
+      record.putInt(FIELDS, a);
+      record.putInt(FIELDS + 4, b);
+      record.putInt(FIELDS + 8, c);
+      record.putInt(FIELDS + 12, d);
+      this.crc.reset();
+      this.crc.update(this.scratch, 0, CRC);
+      record.putInt(CRC, (int) this.crc.getValue());
+      ByteBuffer target = this.buffer.duplicate();
+      target.position(position);
+      target.put(this.scratch);
+      this.end = position + RECORD_SIZE;
+      this.index(position);
+      this.appended += RECORD_SIZE;
+      appended = this.appended;
+    }
+    if (this.durableAck) {
+      this.flush(appended);
+    }
+  }
+
+  // group commit: one flush covers every record appended before it
+  private void flush(long upTo) {
+    synchronized (this.flushLock) {
+      if (this.durable.get() >= upTo) {
+        return;
+      }
+      long target;
+      MappedByteBuffer mapped;
+      int from;
+      int to;
+      synchronized (this) {
+        target = this.appended;
+        mapped = this.buffer;
+        from = this.forced;
+        to = this.end;
+      }
+      // a compaction meanwhile forced everything, the old mapping is gone
+      DiskSync.force(mapped, from, to - from);
+      synchronized (this) {
+        if (this.buffer == mapped) {
+          this.forced = Math.max(this.forced, to);
+        }
+      }
+      this.durable.accumulateAndGet(target, Math::max);
+    }
+  }
+
+  // called with the monitor held, before a record is appended at end
+  private void ensureCapacity() {
+    if (this.end + RECORD_SIZE <= this.buffer.capacity()) {
+      return;
+    }
+    // at least half of the log is dead: compact rather than grow
+    if (this.live * RECORD_SIZE <= this.end / 2) {
+      this.compact();
+      if (this.end + RECORD_SIZE <= this.buffer.capacity()) {
+        return;
+      }
+    }
+    long size = Math.min((long) this.buffer.capacity() + GROWTH, this.maxSize);
+    if (size < this.end + RECORD_SIZE) {
+      // cannot grow: any dead record is worth a compaction
+      if (this.live * RECORD_SIZE < this.end) {
+        this.compact();
+      }
+      if (this.end + RECORD_SIZE > this.buffer.capacity()) {
+        throw new IllegalStateException("Move log is full");
+      }
+      return;
+    }
+    try {
+      this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** .
+   * copy the live records to a new file, in their order, and replace
+   * the log with it; called with the monitor held. The new file is on
+   * disk before it replaces the log, so a crash leaves one or the other
+   */
+  private void compact() {
+    int[] positions = new int[this.live];
+    int count = 0;
+    for (List<Integer> records : this.games.values()) {
+      for (int position : records) {
+        positions[count++] = position;
+      }
+    }
+    Arrays.sort(positions);
+    Path compacted = this.path.resolveSibling(this.path.getFileName() + ".compact");
+    int size = (int) Math.min((long) count * RECORD_SIZE + GROWTH, this.maxSize);
+    try {
+      try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+          StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+        for (int position : positions) {
+          ByteBuffer record = this.buffer.duplicate();
+          record.position(position).limit(position + RECORD_SIZE);
+          while (record.hasRemaining()) {
+            out.write(record);
+          }
+        }
+        out.force(true);
+      }
+      Files.move(compacted, this.path, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      Path dir = this.path.toAbsolutePath().getParent();
+      if (dir != null) {
+        DiskSync.directory(dir);
+      }
+      this.channel.close();
+      this.channel = FileChannel.open(this.path, StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+      this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    int before = this.end;
+    this.games.clear();
+    this.live = 0;
+    for (int position = 0; position < count * RECORD_SIZE; position += RECORD_SIZE) {
+      this.index(position);
+    }
+    this.end = count * RECORD_SIZE;
+    this.forced = this.end;
+    this.durable.accumulateAndGet(this.appended, Math::max);
+    LOG.info("Compacted move log from {} to {} bytes", before, this.end);
+  }
+
+  private void replay() {
+    int position = 0;
+    while (position + RECORD_SIZE <= this.buffer.capacity()
+        && this.buffer.get(position + TYPE) != 0 && this.isValid(position)) {
+      this.index(position);
+      position += RECORD_SIZE;
+    }
+    this.end = position;
+    // drop a torn tail so that it cannot be mistaken for records later
+    boolean dirty = false;
+    for (int i = position; i < this.buffer.capacity(); i++) {
+      if (this.buffer.get(i) != 0) {
+        this.buffer.put(i, (byte) 0);
+        dirty = true;
+      }
+    }
+    if (dirty) {
+      this.buffer.force();
+    }
+    this.forced = position;
+  }
+
+  private boolean isValid(int position) {
+    ByteBuffer record = this.buffer.duplicate();
+    record.position(position);
+    record.get(this.scratch);
+    this.crc.reset();
+    this.crc.update(this.scratch, 0, CRC);
+    int length = this.scratch[ID_LENGTH];
+    return (int) this.crc.getValue() == ByteBuffer.wrap(this.scratch).getInt(CRC)
+        && length > 0 && length <= MAX_ID;
+  }
+
+  private void index(int position) {
+    byte[] id = new byte[this.buffer.get(position + ID_LENGTH)];
+    ByteBuffer record = this.buffer.duplicate();
+    record.position(position + ID);
+    record.get(id);
+    String gameId = new String(id, StandardCharsets.UTF_8);
+    if (this.buffer.get(position + TYPE) == CLEAR) {
+      List<Integer> dead = this.games.remove(gameId);
+      if (dead != null) {
+        this.live -= dead.size();
+      }
+    } else {
+      this.games.computeIfAbsent(gameId, k -> new ArrayList<>()).add(position);
+      this.live++;
+    }
+  }
+
+  private int field(int position, int i) {
+    return this.buffer.getInt(position + FIELDS + 4 * i);
+  }
+}
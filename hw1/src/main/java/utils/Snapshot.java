@@ -0,0 +1,262 @@
+package utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import models.BitBoard;
+import models.GameBoard;
+import models.Player;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Compact copy of one game as it was after the move with
+ * sequence number seq, so that recovery replays only the moves
+ * after it. Each game has its own file, [gameId].snap, in the
+ * snapshot directory, replaced atomically when it is written and
+ * forced to disk before the rename.
+ */
+final class Snapshot {
+
+  private static final Logger LOG = LoggerFactory.getLogger(Snapshot.class);
+
+  private static final int MAGIC = 0x54544f53;
+
+  private static final String SUFFIX = ".snap";
+
+  private final long seq;
+
+  // counts[0] is p1, counts[1] is p2
+  private final int[] counts;
+
+  private final int size;
+
+  private final int winLength;
+
+  // mapping[0] is p1, mapping[1] is p2, '\u0000' if absent
+  private final char[] mapping;
+
+  // cell index and piece of every occupied cell
+  private final int[] cells;
+
+  private final char[] pieces;
+
+  private Snapshot(long seq, int[] counts, int size, int winLength,
+      char[] mapping, int[] cells, char[] pieces) {
+    this.seq = seq;
+    this.counts = counts;
+    this.size = size;
+    this.winLength = winLength;
+    this.mapping = mapping;
+    this.cells = cells;
+    this.pieces = pieces;
+  }
+
+  /** .
+   * @param seq sequence number of the last move on the board
+   * @param counts moves of player 1 and player 2 on the board
+   * @param board the board to copy
+   * @return the snapshot of the board
+   */
+  static Snapshot of(long seq, int[] counts, GameBoard board) {
+    int size = board.getSize();
+    int[] cells = new int[board.getPieceCount()];
+    char[] pieces = new char[cells.length];
+    int count = 0;
+    for (int row = 0; row < size && count < cells.length; row++) {
+      for (int col = 0; col < size; col++) {
+        char piece = board.getPiece(row, col);
+        if (piece != '\u0000') {
+          cells[count] = row * size + col;
+          pieces[count++] = piece;
+        }
+      }
+    }
+    char[] mapping = {type(board.getP1()), type(board.getP2())};
+    return new Snapshot(seq, counts.clone(), size, board.getWinLength(),
+        mapping, cells, pieces);
+  }
+
+  /** get the sequence number of the last move in the snapshot.*/
+  long getSeq() {
+    return this.seq;
+  }
+
+  /** get the moves of player 1 and player 2 in the snapshot.*/
+  int[] getCounts() {
+    return this.counts.clone();
+  }
+
+  /** get the moves in the snapshot.*/
+  int getMoves() {
+    return this.counts[0] + this.counts[1];
+  }
+
+  /** .
+   * @param row row of a move
+   * @param col column of a move
+   * @param playerId player of the move
+   * @return if the piece of the player is on the cell
+   */
+  boolean hasMove(int row, int col, int playerId) {
+    if (playerId < 1 || playerId > 2 || row < 0 || col < 0 || row >= this.size) {
+      return false;
+    }
+    int cell = row * this.size + col;
+    for (int i = 0; i < this.cells.length; i++) {
+      if (this.cells[i] == cell) {
+        return this.pieces[i] == this.mapping[playerId - 1];
+      }
+    }
+    return false;
+  }
+
+  /** .
+   * @param players piece of player 1 and of player 2 in the store,
+   *        '\u0000' if absent
+   * @param boardSize rows and columns of the game in the store
+   * @param winLength pieces in a row needed to win in the store
+   * @return if the snapshot was taken with these players and board
+   */
+  boolean hasPlayers(char[] players, int boardSize, int winLength) {
+    return Arrays.equals(this.mapping, players)
+        && this.size == boardSize && this.winLength == winLength;
+  }
+
+  /** .
+   * @param board an empty board, given the players and pieces
+   * @return the piece of player 1 and of player 2
+   */
+  char[] restore(GameBoard board) {
+    if (this.size != board.getSize() || this.winLength != board.getWinLength()) {
+      board.setDimensions(this.size, this.winLength);
+    }
+    if (this.mapping[0] != '\u0000') {
+      board.setPlayer1(new Player(this.mapping[0], 1));
+    }
+    if (this.mapping[1] != '\u0000') {
+      board.setPlayer2(new Player(this.mapping[1], 2));
+    }
+    board.setGameStatus(this.mapping[0] != '\u0000' && this.mapping[1] != '\u0000');
+    for (int i = 0; i < this.cells.length; i++) {
+      board.setPiece(this.cells[i] / this.size, this.cells[i] % this.size, this.pieces[i]);
+    }
+    return this.mapping.clone();
+  }
+
+  /** .
+   * @param dir snapshot directory, created if missing
+   * @param gameId game of the snapshot
+   * @throws IOException if the file cannot be written
+   */
+  void save(Path dir, String gameId) throws IOException {
+    Files.createDirectories(dir);
+    Path tmp = dir.resolve(gameId + SUFFIX + ".tmp");
+    try (FileChannel file = FileChannel.open(tmp, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Channels.newOutputStream(file)));
+      out.writeInt(MAGIC);
+      out.writeLong(this.seq);
+      out.writeInt(this.counts[0]);
+      out.writeInt(this.counts[1]);
+      out.writeShort(this.size);
+      out.writeShort(this.winLength);
+      out.writeChar(this.mapping[0]);
+      out.writeChar(this.mapping[1]);
+      out.writeInt(this.cells.length);
+      for (int i = 0; i < this.cells.length; i++) {
+        out.writeInt(this.cells[i]);
+        out.writeChar(this.pieces[i]);
+      }
+      out.flush();
+      // on disk before it replaces the last snapshot
+      file.force(true);
+    }
+    Files.move(tmp, dir.resolve(gameId + SUFFIX),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    DiskSync.directory(dir);
+  }
+
+  /** .
+   * @param dir snapshot directory
+   * @param gameId game of the snapshot
+   * @return the snapshot of the game, null if there is none
+   *         or it cannot be read
+   */
+  static Snapshot load(Path dir, String gameId) {
+    try (InputStream file = Files.newInputStream(dir.resolve(gameId + SUFFIX));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+      if (in.readInt() != MAGIC) {
+        return null;
+      }
+      long seq = in.readLong();
+      int[] counts = {in.readInt(), in.readInt()};
+      int size = in.readShort();
+      int winLength = in.readShort();
+      char[] mapping = {in.readChar(), in.readChar()};
+      int count = in.readInt();
+      if (!BitBoard.isValidShape(size, winLength) || count < 0 || count > size * size) {
+        return null;
+      }
+      int[] cells = new int[count];
+      char[] pieces = new char[count];
+      for (int i = 0; i < count; i++) {
+        cells[i] = in.readInt();
+        pieces[i] = in.readChar();
+        if (cells[i] < 0 || cells[i] >= size * size) {
+          return null;
+        }
+      }
+      return new Snapshot(seq, counts, size, winLength, mapping, cells, pieces);
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      LOG.warn("Cannot read the snapshot of game={}", gameId, e);
+      return null;
+    }
+  }
+
+  /** .
+   * @param dir snapshot directory
+   * @param gameId game whose snapshot is removed
+   */
+  static void delete(Path dir, String gameId) {
+    try {
+      Files.deleteIfExists(dir.resolve(gameId + SUFFIX));
+    } catch (IOException e) {
+      LOG.warn("Cannot delete the snapshot of game={}", gameId, e);
+    }
+  }
+
+  /** .
+   * @param dir snapshot directory whose snapshots are removed
+   */
+  static void deleteAll(Path dir) {
+    if (!Files.isDirectory(dir)) {
+      return;
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+      for (Path file : files) {
+        Files.deleteIfExists(file);
+      }
+    } catch (IOException e) {
+      LOG.warn("Cannot delete the snapshots of {}", dir, e);
+    }
+  }
+
+  private static char type(Player player) {
+    return player == null ? '\u0000' : player.getType();
+  }
+}
@@ -0,0 +1,73 @@
+package utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Prepared statements of one connection, parsed and planned
+ * once per SQL text and reused afterwards.
+ * Not thread-safe: a cache is used by one thread at a time,
+ * the owner of its connection.
+ */
+class StatementCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(StatementCache.class);
+
+  private final Connection conn;
+
+  private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+  /** .
+   * @param conn connection the statements are prepared on
+   */
+  StatementCache(Connection conn) {
+    this.conn = conn;
+  }
+
+  /** get the connection of the cache.*/
+  Connection getConnection() {
+    return this.conn;
+  }
+
+  /** .
+   * @param sql SQL with ? parameters
+   * @return the statement of this SQL, parameters cleared
+   * @throws SQLException if the SQL cannot be prepared
+   */
+  PreparedStatement prepare(String sql) throws SQLException {
+    PreparedStatement stmt = this.statements.get(sql);
+    if (stmt == null) {
+      stmt = this.conn.prepareStatement(sql);
+      this.statements.put(sql, stmt);
+    } else {
+      stmt.clearParameters();
+    }
+    return stmt;
+  }
+
+  /** close every statement, they are prepared again when needed.*/
+  void clear() {
+    for (PreparedStatement stmt : this.statements.values()) {
+      try {
+        stmt.close();
+      } catch (SQLException e) {
+        LOG.warn("Cannot close a statement", e);
+      }
+    }
+    this.statements.clear();
+  }
+
+  /** close the statements and the connection.*/
+  void close() {
+    this.clear();
+    try {
+      this.conn.close();
+    } catch (SQLException e) {
+      LOG.warn("Cannot close the connection", e);
+    }
+  }
+}
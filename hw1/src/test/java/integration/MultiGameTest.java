@@ -0,0 +1,388 @@
+package integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.gson.Gson;
+import controllers.PlayGame;
+import controllers.UiWebSocket;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import kong.unirest.HttpResponse;
+import kong.unirest.Unirest;
+import kong.unirest.json.JSONObject;
+import models.BinaryBoard;
+import models.BoardUpdate;
+import models.GameBoard;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class MultiGameTest {
+
+  /**.
+   * Before all, starting the server
+   */
+  @BeforeAll
+  public static void init() {
+    PlayGame.main(null);
+    System.out.println("Before All, starting the server");
+  }
+
+  /**.
+   * Reset the games used by the tests
+   */
+  @BeforeEach
+  public void startNewGames() {
+    Unirest.get("http://localhost:8080/").asString();
+    Unirest.get("http://localhost:8080/game/a/newgame").asString();
+    Unirest.get("http://localhost:8080/game/b/newgame").asString();
+  }
+
+  /**.
+   * Moves in one game do not change another game
+   */
+  @Test
+  public void testGamesAreIndependent() {
+    Unirest.post("http://localhost:8080/game/a/startgame").body("type=X").asString();
+    Unirest.get("http://localhost:8080/game/a/joingame").asString();
+    Unirest.post("http://localhost:8080/game/b/startgame").body("type=O").asString();
+    Unirest.get("http://localhost:8080/game/b/joingame").asString();
+
+    Unirest.post("http://localhost:8080/game/a/move/1").body("x=1&y=1").asString();
+    Unirest.post("http://localhost:8080/game/b/move/1").body("x=0&y=0").asString();
+    Unirest.post("http://localhost:8080/game/b/move/2").body("x=2&y=2").asString();
+
+    GameBoard a = getBoard("/game/a/gameboard");
+    GameBoard b = getBoard("/game/b/gameboard");
+    assertEquals('X', a.getPiece(1, 1));
+    assertEquals('\u0000', a.getPiece(0, 0));
+    assertEquals(2, a.getTurn());
+    assertEquals('O', b.getPiece(0, 0));
+    assertEquals('X', b.getPiece(2, 2));
+    assertEquals('\u0000', b.getPiece(1, 1));
+    assertEquals(1, b.getTurn());
+
+    // the default game is untouched as well
+    GameBoard board = getBoard("/gameboard");
+    assertEquals(null, board.getP1());
+    assertEquals('\u0000', board.getPiece(1, 1));
+  }
+
+  /**.
+   * A new game only resets its own board
+   */
+  @Test
+  public void testNewGameOnlyResetsOneGame() {
+    Unirest.post("http://localhost:8080/game/a/startgame").body("type=X").asString();
+    Unirest.post("http://localhost:8080/game/b/startgame").body("type=X").asString();
+    Unirest.get("http://localhost:8080/game/a/newgame").asString();
+
+    assertEquals(null, getBoard("/game/a/gameboard").getP1());
+    assertEquals('X', getBoard("/game/b/gameboard").getP1().getType());
+  }
+
+  /**.
+   * Game ids are checked
+   */
+  @Test
+  public void testInvalidGameId() {
+    HttpResponse<String> response =
+        Unirest.get("http://localhost:8080/game/a.b/gameboard").asString();
+    assertEquals(400, response.getStatus());
+  }
+
+  /**.
+   * Player 1 cannot change pieces once the game has a move
+   */
+  @Test
+  public void testTypeFixedAfterFirstMove() {
+    Unirest.post("http://localhost:8080/game/a/startgame").body("type=X").asString();
+    // before any move the type can still change
+    HttpResponse<String> response =
+        Unirest.post("http://localhost:8080/game/a/startgame").body("type=O").asString();
+    assertEquals(201, response.getStatus());
+    Unirest.get("http://localhost:8080/game/a/joingame").asString();
+    Unirest.post("http://localhost:8080/game/a/move/1").body("x=0&y=0").asString();
+
+    response = Unirest.post("http://localhost:8080/game/a/startgame").body("type=Z").asString();
+    assertEquals(400, response.getStatus());
+    GameBoard board = getBoard("/game/a/gameboard");
+    assertEquals('O', board.getP1().getType());
+    assertEquals('O', board.getPiece(0, 0));
+    assertEquals(2, board.getTurn());
+  }
+
+  /**.
+   * A large board accepts multi-digit cells and survives a restart
+   */
+  @Test
+  public void testLargeBoardGame() throws Exception {
+    Unirest.get("http://localhost:8080/game/c/newgame").asString();
+    HttpResponse<String> response = Unirest.post("http://localhost:8080/game/c/startgame")
+        .body("type=X&size=15&winLength=5").asString();
+    assertEquals(201, response.getStatus());
+    Unirest.get("http://localhost:8080/game/c/joingame").asString();
+    for (int i = 0; i < 5; i++) {
+      Unirest.post("http://localhost:8080/game/c/move/1").body("x=12&y=" + (10 + i)).asString();
+      if (i < 4) {
+        Unirest.post("http://localhost:8080/game/c/move/2").body("x=0&y=" + i).asString();
+      }
+    }
+    GameBoard board = getBoard("/game/c/gameboard");
+    assertEquals(15, board.getSize());
+    assertEquals('X', board.getPiece(12, 14));
+    assertEquals(1, board.getWinner());
+
+    // the shape of the board is recovered with its moves
+    PlayGame.stop();
+    TimeUnit.SECONDS.sleep(2);
+    PlayGame.main(null);
+    board = getBoard("/game/c/gameboard");
+    assertEquals(15, board.getSize());
+    assertEquals(5, board.getWinLength());
+    assertEquals('O', board.getPiece(0, 3));
+    assertEquals(1, board.getWinner());
+  }
+
+  /**.
+   * Concurrent moves of the same player: only one passes the turn check
+   */
+  @Test
+  public void testConcurrentMovesAreSerialized() throws Exception {
+    Unirest.post("http://localhost:8080/game/a/startgame").body("type=X").asString();
+    Unirest.get("http://localhost:8080/game/a/joingame").asString();
+
+    Thread[] threads = new Thread[9];
+    AtomicInteger accepted = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    for (int i = 0; i < threads.length; i++) {
+      String cell = "x=" + (i / 3) + "&y=" + (i % 3);
+      threads[i] = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        HttpResponse<String> response = Unirest.post("http://localhost:8080/game/a/move/1")
+            .body(cell).asString();
+        if (new JSONObject(response.getBody()).getBoolean("moveValidity")) {
+          accepted.incrementAndGet();
+        }
+      });
+      threads[i].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(1, accepted.get());
+    GameBoard board = getBoard("/game/a/gameboard");
+    assertEquals(1, board.getPieceCount());
+    assertEquals(2, board.getTurn());
+  }
+
+  /**.
+   * Board updates only reach the sockets watching that game
+   */
+  @Test
+  public void testBroadcastOnlyToOneGame() throws Exception {
+    BlockingQueue<String> toA = new LinkedBlockingQueue<>();
+    BlockingQueue<String> toB = new LinkedBlockingQueue<>();
+    WebSocket a = connect("/game/a/gameboard", toA);
+    WebSocket b = connect("/game/b/gameboard", toB);
+
+    Unirest.post("http://localhost:8080/game/a/startgame").body("type=X").asString();
+    Unirest.get("http://localhost:8080/game/a/joingame").asString();
+    Unirest.post("http://localhost:8080/game/a/move/1").body("x=1&y=1").asString();
+
+    String update = toA.poll(5, TimeUnit.SECONDS);
+    assertTrue(update != null && update.contains("gameStarted"));
+    assertEquals(null, toB.poll(500, TimeUnit.MILLISECONDS));
+
+    a.sendClose(WebSocket.NORMAL_CLOSURE, "").join();
+    b.sendClose(WebSocket.NORMAL_CLOSURE, "").join();
+  }
+
+  /**.
+   * A socket asking for binary boards gets them, the others keep JSON
+   */
+  @Test
+  public void testBinaryBroadcast() throws Exception {
+    BlockingQueue<String> text = new LinkedBlockingQueue<>();
+    BlockingQueue<byte[]> binary = new LinkedBlockingQueue<>();
+    WebSocket json = connect("/game/a/gameboard", text);
+    WebSocket packed = connect("/game/a/gameboard?format=binary", binary);
+
+    Unirest.post("http://localhost:8080/game/a/startgame").body("type=O").asString();
+    Unirest.get("http://localhost:8080/game/a/joingame").asString();
+    Unirest.post("http://localhost:8080/game/a/move/1").body("x=1&y=2").asString();
+
+    // the join, then the move
+    assertTrue(text.poll(5, TimeUnit.SECONDS).contains("gameStarted"));
+    assertTrue(text.poll(5, TimeUnit.SECONDS).contains("gameStarted"));
+    binary.poll(5, TimeUnit.SECONDS);
+    byte[] update = binary.poll(5, TimeUnit.SECONDS);
+    assertEquals(BinaryBoard.PACKED_LENGTH, update.length);
+    GameBoard board = BinaryBoard.decode(update);
+    assertEquals('O', board.getPiece(1, 2));
+    assertEquals('X', board.getP2().getType());
+    assertEquals(2, board.getTurn());
+
+    json.sendClose(WebSocket.NORMAL_CLOSURE, "").join();
+    packed.sendClose(WebSocket.NORMAL_CLOSURE, "").join();
+  }
+
+  /**.
+   * Delta sessions get the board, then versioned moves, and the board
+   * again on resync; rejected moves are not sent to anyone
+   */
+  @Test
+  public void testDeltaUpdates() throws Exception {
+    BlockingQueue<String> text = new LinkedBlockingQueue<>();
+    BlockingQueue<byte[]> binary = new LinkedBlockingQueue<>();
+    WebSocket json = connect("/game/a/gameboard?updates=delta", text);
+    WebSocket packed = connect("/game/a/gameboard?updates=delta&format=binary", binary);
+    assertTrue(text.poll(5, TimeUnit.SECONDS).contains("\"board\""));
+    assertEquals(BoardUpdate.FULL, binary.poll(5, TimeUnit.SECONDS)[0]);
+
+    Unirest.post("http://localhost:8080/game/a/startgame").body("type=X").asString();
+    Unirest.get("http://localhost:8080/game/a/joingame").asString();
+    Unirest.post("http://localhost:8080/game/a/move/1").body("x=0&y=1").asString();
+    Unirest.post("http://localhost:8080/game/a/move/1").body("x=2&y=2").asString();
+
+    JSONObject joined = new JSONObject(text.poll(5, TimeUnit.SECONDS));
+    int version = joined.getInt("version");
+    assertTrue(joined.getJSONObject("board").getBoolean("gameStarted"));
+    JSONObject moved = new JSONObject(text.poll(5, TimeUnit.SECONDS));
+    assertEquals(version + 1, moved.getInt("version"));
+    assertEquals(1, moved.getJSONObject("move").getInt("y"));
+    assertEquals(2, moved.getInt("turn"));
+    // the second move was not player 1's turn
+    assertEquals(null, text.poll(500, TimeUnit.MILLISECONDS));
+
+    binary.poll(5, TimeUnit.SECONDS);
+    byte[] move = binary.poll(5, TimeUnit.SECONDS);
+    assertEquals(8, move.length);
+    assertEquals(BoardUpdate.MOVE, move[0]);
+
+    json.sendText(UiWebSocket.RESYNC, true).join();
+    JSONObject resync = new JSONObject(text.poll(5, TimeUnit.SECONDS));
+    assertEquals(version + 1, resync.getInt("version"));
+    assertEquals("X", resync.getJSONObject("board").getJSONArray("boardState")
+        .getJSONArray(0).getString(1));
+
+    json.sendClose(WebSocket.NORMAL_CLOSURE, "").join();
+    packed.sendClose(WebSocket.NORMAL_CLOSURE, "").join();
+  }
+
+  /**.
+   * Moves and sessions show on /metrics in the Prometheus text format
+   */
+  @Test
+  public void testMetrics() throws Exception {
+    BlockingQueue<String> text = new LinkedBlockingQueue<>();
+    WebSocket socket = connect("/game/a/gameboard", text);
+    Unirest.post("http://localhost:8080/game/a/startgame").body("type=X").asString();
+    Unirest.get("http://localhost:8080/game/a/joingame").asString();
+    Unirest.post("http://localhost:8080/game/a/move/1").body("x=1&y=1").asString();
+    text.poll(5, TimeUnit.SECONDS);
+    text.poll(5, TimeUnit.SECONDS);
+
+    HttpResponse<String> response = Unirest.get("http://localhost:8080/metrics").asString();
+    assertEquals(200, response.getStatus());
+    assertTrue(response.getHeaders().getFirst("Content-Type").startsWith("text/plain"));
+    String metrics = response.getBody();
+    assertTrue(metrics.contains("# TYPE tictactoe_make_movement_seconds histogram\n"));
+    assertTrue(metrics.contains("tictactoe_db_add_move_seconds_bucket{le=\"+Inf\"} "));
+    assertTrue(metrics.contains("\ntictactoe_websocket_sessions 1\n"));
+    for (String name : new String[] {"move_validation", "make_movement", "db_add_move",
+        "json_encode", "broadcast_send"}) {
+      String count = metrics.split("tictactoe_" + name + "_seconds_count ")[1].split("\n")[0];
+      assertTrue(Long.parseLong(count) > 0, name);
+    }
+    socket.sendClose(WebSocket.NORMAL_CLOSURE, "").join();
+  }
+
+  /**
+   * This method runs only once after all the test cases have been executed.
+   */
+  @AfterAll
+  public static void close() {
+    PlayGame.stop();
+    System.out.println("After All, app is closed");
+  }
+
+  /**.
+   * @param path web socket endpoint
+   * @param received queue of the text messages received
+   * @return the connected web socket
+   */
+  private WebSocket connect(String path, BlockingQueue<String> received) {
+    WebSocket.Listener listener = new WebSocket.Listener() {
+      private StringBuilder text = new StringBuilder();
+
+      @Override
+      public CompletionStage<?> onText(WebSocket ws, CharSequence data, boolean last) {
+        text.append(data);
+        if (last) {
+          received.add(text.toString());
+          text = new StringBuilder();
+        }
+        ws.request(1);
+        return null;
+      }
+    };
+    return HttpClient.newHttpClient().newWebSocketBuilder()
+        .buildAsync(URI.create("ws://localhost:8080" + path), listener).join();
+  }
+
+  /**.
+   * @param path web socket endpoint
+   * @param received queue of the binary messages received
+   * @return the connected web socket
+   */
+  private WebSocket connect(String path, Queue<byte[]> received) {
+    WebSocket.Listener listener = new WebSocket.Listener() {
+      private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+      @Override
+      public CompletionStage<?> onBinary(WebSocket ws, ByteBuffer data, boolean last) {
+        byte[] chunk = new byte[data.remaining()];
+        data.get(chunk);
+        bytes.write(chunk, 0, chunk.length);
+        if (last) {
+          received.add(bytes.toByteArray());
+          bytes = new ByteArrayOutputStream();
+        }
+        ws.request(1);
+        return null;
+      }
+    };
+    return HttpClient.newHttpClient().newWebSocketBuilder()
+        .buildAsync(URI.create("ws://localhost:8080" + path), listener).join();
+  }
+
+  /**.
+   * @param path board endpoint
+   * @return the GameBoard result for checking
+   */
+  private GameBoard getBoard(String path) {
+    HttpResponse<String> response = Unirest.get("http://localhost:8080" + path).asString();
+    JSONObject jsonObject = new JSONObject(response.getBody());
+    Gson gson = new Gson();
+    return gson.fromJson(jsonObject.toString(), GameBoard.class);
+  }
+}
@@ -0,0 +1,69 @@
+package integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import controllers.RequestWorkers;
+import io.javalin.Javalin;
+import io.javalin.http.BadRequestResponse;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import kong.unirest.HttpResponse;
+import kong.unirest.Unirest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class RequestWorkersTest {
+
+  private static ExecutorService workers;
+
+  private static Javalin app;
+
+  // free port chosen when the server starts
+  private static int port;
+
+  /**.
+   * Start a server whose routes run on a named worker thread
+   */
+  @BeforeAll
+  public static void init() {
+    workers = Executors.newSingleThreadExecutor(r -> new Thread(r, "request-worker"));
+    app = Javalin.create().start(0);
+    port = app.port();
+    app.get("/thread", RequestWorkers.handler(workers, ctx -> {
+      ctx.status(201);
+      return Thread.currentThread().getName();
+    }));
+    app.get("/fail", RequestWorkers.handler(workers, ctx -> {
+      throw new BadRequestResponse("Invalid request");
+    }));
+  }
+
+  /**.
+   * the body runs on the executor and its status and result are sent
+   */
+  @Test
+  public void testBodyRunsOnWorker() {
+    HttpResponse<String> response = Unirest.get("http://localhost:" + port + "/thread").asString();
+    assertEquals(201, response.getStatus());
+    assertEquals("request-worker", response.getBody());
+  }
+
+  /**.
+   * exceptions of the body are mapped as if thrown by a handler
+   */
+  @Test
+  public void testExceptionMapped() {
+    HttpResponse<String> response = Unirest.get("http://localhost:" + port + "/fail").asString();
+    assertEquals(400, response.getStatus());
+  }
+
+  /**.
+   * Stop the server
+   */
+  @AfterAll
+  public static void close() {
+    app.stop();
+    workers.shutdown();
+  }
+}
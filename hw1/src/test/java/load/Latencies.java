@@ -0,0 +1,46 @@
+package load;
+
+import java.util.Arrays;
+
+/** Latencies recorded by many threads, reported as percentiles. */
+final class Latencies {
+
+  private long[] nanos = new long[1024];
+
+  private int count;
+
+  /** .
+   * @param latency one latency in nanoseconds
+   */
+  synchronized void add(long latency) {
+    if (this.count == this.nanos.length) {
+      this.nanos = Arrays.copyOf(this.nanos, this.count * 2);
+    }
+    this.nanos[this.count++] = latency;
+  }
+
+  /** get the number of latencies recorded.*/
+  synchronized int count() {
+    return this.count;
+  }
+
+  /** .
+   * @param name what was measured
+   * @return one line with the count, p50, p99, p999 and max in milliseconds
+   */
+  synchronized String report(String name) {
+    long[] sorted = Arrays.copyOf(this.nanos, this.count);
+    Arrays.sort(sorted);
+    return String.format("%-12s n=%-8d p50=%8.2f p99=%8.2f p999=%8.2f max=%8.2f ms",
+        name, sorted.length, millis(sorted, 0.50), millis(sorted, 0.99),
+        millis(sorted, 0.999), millis(sorted, 1.0));
+  }
+
+  private static double millis(long[] sorted, double quantile) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int index = (int) Math.ceil(quantile * sorted.length) - 1;
+    return sorted[Math.max(0, index)] / 1e6;
+  }
+}
@@ -0,0 +1,228 @@
+package load;
+
+import controllers.PlayGame;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import kong.unirest.HttpResponse;
+import kong.unirest.Unirest;
+import kong.unirest.json.JSONObject;
+
+/** Load test of a running server: every game is started, joined and
+ * played over HTTP while spectators follow it on web sockets, and the
+ * latencies of the move acknowledgements and of the broadcasts are
+ * reported with the HTTP throughput. Games use the /game/:gameId
+ * routes so that they run in parallel; the default game routes are the
+ * same handlers serialized on one game.
+ * Run from hw1 with options as key=value, for example
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=load.LoadGenerator -Dexec.args="games=200 spectators=10"
+ * Options: url (default: start PlayGame in this JVM on port 8080),
+ * games (50), spectators per game (4), moves per game (100),
+ * threads playing games (16), size of the boards (15).
+ */
+public final class LoadGenerator {
+
+  private final String url;
+
+  private final int games;
+
+  private final int spectators;
+
+  private final int moves;
+
+  private final int size;
+
+  private final int[] order;
+
+  private final Latencies acks = new Latencies();
+
+  private final Latencies broadcasts = new Latencies();
+
+  private final AtomicLong requests = new AtomicLong();
+
+  private final AtomicLong errors = new AtomicLong();
+
+  // send time of every move, by game and cell
+  private final Map<String, Long> sent = new ConcurrentHashMap<>();
+
+  private final HttpClient sockets = HttpClient.newHttpClient();
+
+  private LoadGenerator(Map<String, String> options) {
+    this.url = options.getOrDefault("url", "http://localhost:8080");
+    this.games = Integer.parseInt(options.getOrDefault("games", "50"));
+    this.spectators = Integer.parseInt(options.getOrDefault("spectators", "4"));
+    this.size = Integer.parseInt(options.getOrDefault("size", "15"));
+    this.order = drawOrder(this.size);
+    this.moves = Math.min(this.order.length,
+        Integer.parseInt(options.getOrDefault("moves", "100")));
+  }
+
+  // cells as row * size + col, taken in turn by player 1 and player 2
+  // so that nobody gets three in a line: player 1 has the cells where
+  // (col + 2 * row) % 4 < 2, which gives XXOO along rows and anti-diagonals,
+  // XOXO along columns and XOOX along diagonals
+  private static int[] drawOrder(int size) {
+    int[] first = new int[size * size];
+    int[] second = new int[size * size];
+    int firsts = 0;
+    int seconds = 0;
+    for (int cell = 0; cell < size * size; cell++) {
+      if ((cell % size + 2 * (cell / size)) % 4 < 2) {
+        first[firsts++] = cell;
+      } else {
+        second[seconds++] = cell;
+      }
+    }
+    int pairs = Math.min(firsts, seconds);
+    int[] order = new int[2 * pairs];
+    for (int i = 0; i < pairs; i++) {
+      order[2 * i] = first[i];
+      order[2 * i + 1] = second[i];
+    }
+    return order;
+  }
+
+  /**.
+   * @param args options as key=value
+   * @throws Exception if the load test cannot run
+   */
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new ConcurrentHashMap<>();
+    for (String arg : args == null ? new String[0] : args) {
+      int split = arg.indexOf('=');
+      if (split > 0) {
+        options.put(arg.substring(0, split), arg.substring(split + 1));
+      }
+    }
+    boolean embedded = !options.containsKey("url");
+    if (embedded) {
+      PlayGame.main(null);
+    }
+    int threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+    Unirest.config().concurrency(threads * 2, threads * 2);
+    try {
+      new LoadGenerator(options).run(threads);
+    } finally {
+      Unirest.shutDown();
+      if (embedded) {
+        PlayGame.stop();
+      }
+    }
+  }
+
+  private void run(int threads) throws Exception {
+    ExecutorService players = Executors.newFixedThreadPool(threads);
+    long start = System.nanoTime();
+    List<Future<?>> played = new ArrayList<>();
+    for (int i = 0; i < this.games; i++) {
+      String gameId = "load" + i;
+      played.add(players.submit(() -> {
+        this.play(gameId);
+        return null;
+      }));
+    }
+    for (Future<?> game : played) {
+      game.get();
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    players.shutdown();
+
+    System.out.println();
+    System.out.printf("games=%d spectators/game=%d moves/game=%d board=%dx%d threads=%d%n",
+        this.games, this.spectators, this.moves, this.size, this.size, threads);
+    System.out.printf("http: %d requests in %.2f s = %.0f req/s, %d errors%n",
+        this.requests.get(), seconds, this.requests.get() / seconds, this.errors.get());
+    System.out.println(this.acks.report("move ack"));
+    System.out.println(this.broadcasts.report("broadcast"));
+    long expected = (long) this.games * this.spectators * this.moves;
+    System.out.printf("broadcasts delivered: %d of %d%n", this.broadcasts.count(), expected);
+  }
+
+  private void play(String gameId) throws Exception {
+    String game = this.url + "/game/" + gameId;
+    this.get(game + "/newgame");
+    CountDownLatch delivered = new CountDownLatch(this.spectators * this.moves);
+    List<WebSocket> watching = new ArrayList<>();
+    for (int i = 0; i < this.spectators; i++) {
+      watching.add(this.watch(gameId, delivered));
+    }
+    this.post(game + "/startgame", "type=X&size=" + this.size
+        + "&winLength=" + Math.min(this.size, 5));
+    this.get(game + "/joingame");
+
+    for (int i = 0; i < this.moves; i++) {
+      int x = this.order[i] / this.size;
+      int y = this.order[i] % this.size;
+      int player = i % 2 + 1;
+      this.sent.put(gameId + ":" + x + ":" + y, System.nanoTime());
+      long before = System.nanoTime();
+      HttpResponse<String> response = this.post(game + "/move/" + player, "x=" + x + "&y=" + y);
+      this.acks.add(System.nanoTime() - before);
+      if (!response.getBody().contains("\"moveValidity\":true")) {
+        this.errors.incrementAndGet();
+      }
+    }
+    delivered.await(30, TimeUnit.SECONDS);
+    for (WebSocket socket : watching) {
+      socket.sendClose(WebSocket.NORMAL_CLOSURE, "").join();
+    }
+  }
+
+  private WebSocket watch(String gameId, CountDownLatch delivered) {
+    WebSocket.Listener listener = new WebSocket.Listener() {
+      private StringBuilder text = new StringBuilder();
+
+      @Override
+      public CompletionStage<?> onText(WebSocket ws, CharSequence data, boolean last) {
+        this.text.append(data);
+        if (last) {
+          long received = System.nanoTime();
+          JSONObject update = new JSONObject(this.text.toString());
+          this.text = new StringBuilder();
+          if (update.has("move")) {
+            JSONObject move = update.getJSONObject("move");
+            Long sentAt = LoadGenerator.this.sent.get(
+                gameId + ":" + move.getInt("x") + ":" + move.getInt("y"));
+            if (sentAt != null) {
+              LoadGenerator.this.broadcasts.add(received - sentAt);
+              delivered.countDown();
+            }
+          }
+        }
+        ws.request(1);
+        return null;
+      }
+    };
+    String socket = this.url.replaceFirst("^http", "ws")
+        + "/game/" + gameId + "/gameboard?updates=delta";
+    return this.sockets.newWebSocketBuilder().buildAsync(URI.create(socket), listener).join();
+  }
+
+  private HttpResponse<String> get(String path) {
+    return this.count(Unirest.get(path).asString());
+  }
+
+  private HttpResponse<String> post(String path, String body) {
+    return this.count(Unirest.post(path).body(body).asString());
+  }
+
+  private HttpResponse<String> count(HttpResponse<String> response) {
+    this.requests.incrementAndGet();
+    if (response.getStatus() >= 400) {
+      this.errors.incrementAndGet();
+    }
+    return response;
+  }
+}
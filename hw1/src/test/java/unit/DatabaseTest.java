@@ -1,6 +1,7 @@
 package unit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
@@ -8,6 +9,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import models.GameBoard;
 import models.Move;
 import models.Player;
 import org.junit.jupiter.api.BeforeEach;
@@ -159,6 +161,247 @@ public class DatabaseTest {
     }  
   }
 
+  /**.
+   * moves queued without waiting are all committed
+   * before the game is recovered
+   */
+  @Test
+  public void testWriteBehindMoves() {
+    Player p1 = new Player('X', 1);
+    Player p2 = new Player('O', 2);
+    Database db = new Database(false, 4, 5);
+    db.createTable();
+    db.addPlayers(p1);
+    db.addPlayers(p2);
+    int[][] cells = {{0, 0}, {1, 1}, {0, 1}, {2, 2}, {0, 2}};
+    for (int i = 0; i < cells.length; i++) {
+      db.addMove(new Move(i % 2 == 0 ? p1 : p2, cells[i][0], cells[i][1]));
+    }
+    
+    GameBoard board = new GameBoard();
+    db.recover(board);
+    assertEquals(5, board.getPieceCount());
+    assertEquals(1, board.getWinner());
+    db.close();
+  }
+  
+  /**.
+   * moves of several games written from several threads
+   * are all recovered, and the database is in WAL mode
+   */
+  @Test
+  public void testConcurrentGames() throws Exception {
+    Database db = new Database();
+    db.createTable();
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      String gameId = "game" + t;
+      threads[t] = new Thread(() -> {
+        Player p1 = new Player('X', 1);
+        Player p2 = new Player('O', 2);
+        db.addPlayers(gameId, p1);
+        db.addPlayers(gameId, p2);
+        for (int i = 0; i < 9; i++) {
+          db.addMove(gameId, new Move(i % 2 == 0 ? p1 : p2, i / 3, i % 3));
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    
+    for (int t = 0; t < threads.length; t++) {
+      GameBoard board = new GameBoard();
+      db.recover("game" + t, board);
+      assertEquals(9, board.getPieceCount());
+      assertEquals(1, board.getWinner());
+    }
+    db.close();
+    
+    Statement stmt = this.conn.createStatement();
+    ResultSet rs = stmt.executeQuery("PRAGMA journal_mode;");
+    assertEquals("wal", rs.getString(1));
+    rs.close();
+    stmt.close();
+  }
+  
+  /**.
+   * a game recovers from its snapshot plus the later moves,
+   * and a snapshot of moves deleted since is ignored
+   */
+  @Test
+  public void testSnapshotRecovery() {
+    Player p1 = new Player('X', 1);
+    Player p2 = new Player('O', 2);
+    Database db = new Database();
+    db.createTable();
+    db.addPlayers("snap", p1, 5, 4);
+    db.addPlayers("snap", p2, 5, 4);
+    GameBoard board = new GameBoard(5, 4);
+    board.setPlayer1(p1);
+    board.setPlayer2(p2);
+    for (int i = 0; i < 4; i++) {
+      Move move = new Move(i % 2 == 0 ? p1 : p2, i / 2, i % 2);
+      board.makeMovement(move);
+      db.addMove("snap", move);
+    }
+    db.snapshot("snap", board);
+    db.addMove("snap", new Move(p1, 2, 0));
+    
+    GameBoard recovered = new GameBoard();
+    db.recover("snap", recovered);
+    assertEquals(5, recovered.getSize());
+    assertEquals(5, recovered.getPieceCount());
+    assertEquals('X', recovered.getPiece(2, 0));
+    assertEquals('O', recovered.getPiece(0, 1));
+    assertEquals(2, recovered.getTurn());
+    
+    // moves removed behind the back of the snapshot
+    this.execute("DELETE FROM board WHERE gameID = 'snap';");
+    db.addMove("snap", new Move(p1, 4, 4));
+    recovered = new GameBoard();
+    db.recover("snap", recovered);
+    assertEquals(1, recovered.getPieceCount());
+    assertEquals('X', recovered.getPiece(4, 4));
+    db.clearGame("snap");
+    db.close();
+  }
+  
+  /**.
+   * tables of the first version are keyed by game and sequence
+   * number, keeping their rows
+   */
+  @Test
+  public void testMigrateOldTables() throws Exception {
+    this.execute("DROP TABLE IF EXISTS board;");
+    this.execute("DROP TABLE IF EXISTS player;");
+    this.execute("CREATE TABLE board (row INT NOT NULL, col INT NOT NULL, playerID INT NOT NULL);");
+    this.execute("CREATE TABLE player (playerID INT NOT NULL, type CHAR NOT NULL);");
+    this.execute("INSERT INTO player VALUES (1, 'X'), (2, 'O'), (2, 'O');");
+    this.execute("INSERT INTO board VALUES (1, 1, 1), (0, 0, 2), (2, 2, 1);");
+    Database db = new Database();
+    db.createTable();
+    db.addMove(new Move(new Player('O', 2), 0, 2));
+    
+    Statement stmt = this.conn.createStatement();
+    ResultSet rs = stmt.executeQuery(
+        "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table'");
+    assertEquals(2, rs.getInt(1));
+    rs.close();
+    rs = stmt.executeQuery("SELECT seq, row, col FROM board WHERE gameID = 'default' ORDER BY seq");
+    int[][] expected = {{1, 1, 1}, {2, 0, 0}, {3, 2, 2}, {4, 0, 2}};
+    for (int[] row : expected) {
+      assertEquals(true, rs.next());
+      assertEquals(row[0], rs.getInt("seq"));
+      assertEquals(row[1], rs.getInt("row"));
+      assertEquals(row[2], rs.getInt("col"));
+    }
+    assertEquals(false, rs.next());
+    rs.close();
+    rs = stmt.executeQuery("SELECT COUNT(*) FROM player");
+    assertEquals(2, rs.getInt(1));
+    rs.close();
+    stmt.close();
+    
+    GameBoard board = new GameBoard();
+    db.recover(board);
+    assertEquals(4, board.getPieceCount());
+    assertEquals(1, board.getTurn());
+    db.close();
+  }
+  
+  /**.
+   * a move that cannot be committed is not acknowledged
+   */
+  @Test
+  public void testFailedCommitThrows() {
+    Database db = new Database();
+    db.createTable();
+    db.dropTable();
+    Move move = new Move(new Player('X', 1), 0, 0);
+    assertThrows(IllegalStateException.class, () -> db.addMove(move));
+    db.close();
+  }
+  
+  /**.
+   * a move that comes after the close is refused, not left waiting
+   */
+  @Test
+  public void testMoveAfterCloseThrows() {
+    Database db = new Database();
+    db.createTable();
+    db.close();
+    Move move = new Move(new Player('X', 1), 0, 0);
+    assertThrows(IllegalStateException.class, () -> db.addMove(move));
+  }
+  
+  /**.
+   * a player who cannot be stored is not acknowledged
+   */
+  @Test
+  public void testFailedPlayerThrows() {
+    Database db = new Database();
+    db.createTable();
+    db.dropTable();
+    Player player = new Player('X', 1);
+    assertThrows(IllegalStateException.class, () -> db.addPlayers("gone", player, 3, 3));
+    db.close();
+  }
+  
+  /**.
+   * a game whose rows cannot be deleted is not reported cleared
+   */
+  @Test
+  public void testFailedClearThrows() {
+    Database db = new Database();
+    db.createTable();
+    db.dropTable();
+    assertThrows(IllegalStateException.class, () -> db.clearGame("gone"));
+    db.close();
+  }
+  
+  /**.
+   * a game that cannot be read is not recovered in part
+   */
+  @Test
+  public void testFailedRecoverThrows() {
+    Database db = new Database();
+    db.createTable();
+    db.dropTable();
+    assertThrows(IllegalStateException.class, () -> db.recover("gone", new GameBoard()));
+    db.close();
+  }
+  
+  /**.
+   * a snapshot taken with other players is ignored,
+   * even with as many moves
+   */
+  @Test
+  public void testSnapshotOfOtherPlayers() {
+    Database db = new Database();
+    db.createTable();
+    db.addPlayers("snap", new Player('X', 1), 3, 3);
+    db.addPlayers("snap", new Player('O', 2), 3, 3);
+    GameBoard board = new GameBoard();
+    board.setPlayer1(new Player('X', 1));
+    board.setPlayer2(new Player('O', 2));
+    Move move = new Move(board.getP1(), 1, 1);
+    board.makeMovement(move);
+    db.addMove("snap", move);
+    db.snapshot("snap", board);
+    
+    // the same move, now with the pieces swapped
+    db.addPlayers("snap", new Player('O', 1), 3, 3);
+    db.addPlayers("snap", new Player('X', 2), 3, 3);
+    GameBoard recovered = new GameBoard();
+    db.recover("snap", recovered);
+    assertEquals('O', recovered.getP1().getType());
+    assertEquals('O', recovered.getPiece(1, 1));
+    db.clearGame("snap");
+    db.close();
+  }
+  
   /**.
    * test if add player works
    */
@@ -0,0 +1,281 @@
+package unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.gson.Gson;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import models.BinaryBoard;
+import models.GameBoard;
+import models.Move;
+import models.Player;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class GameBoardTest {
+
+  private GameBoard board;
+
+  private Player p1;
+
+  private Player p2;
+
+  /**.
+   * a started game, X against O
+   */
+  @BeforeEach
+  public void startGame() {
+    this.board = new GameBoard();
+    this.p1 = new Player('X', 1);
+    this.p2 = new Player('O', 2);
+    this.board.setPlayer1(this.p1);
+    this.board.setPlayer2(this.p2);
+  }
+
+  /**.
+   * the snapshot is reused until the board changes
+   */
+  @Test
+  public void testSnapshotCachedUntilChange() {
+    GameBoard.Snapshot first = this.board.snapshot();
+    assertSame(first, this.board.snapshot());
+
+    this.board.makeMovement(new Move(this.p1, 1, 1));
+    GameBoard.Snapshot second = this.board.snapshot();
+    assertNotSame(first, second);
+    assertEquals(true, second.getVersion() > first.getVersion());
+    assertSame(second, this.board.snapshot());
+
+    this.board.setPiece(0, 0, 'O');
+    assertNotSame(second, this.board.snapshot());
+  }
+
+  /**.
+   * every row, column and diagonal wins
+   */
+  @Test
+  public void testAllLinesWin() {
+    int[][][] lines = {
+      {{0, 0}, {0, 1}, {0, 2}}, {{1, 0}, {1, 1}, {1, 2}}, {{2, 0}, {2, 1}, {2, 2}},
+      {{0, 0}, {1, 0}, {2, 0}}, {{0, 1}, {1, 1}, {2, 1}}, {{0, 2}, {1, 2}, {2, 2}},
+      {{0, 0}, {1, 1}, {2, 2}}, {{2, 0}, {1, 1}, {0, 2}}
+    };
+    for (int[][] line : lines) {
+      GameBoard game = new GameBoard();
+      game.setPlayer1(this.p1);
+      game.setPlayer2(this.p2);
+      for (int[] cell : line) {
+        assertEquals(0, game.getWinner());
+        game.setPiece(cell[0], cell[1], 'O');
+        game.update();
+      }
+      assertEquals(2, game.getWinner());
+      assertEquals(false, game.isGameDraw());
+    }
+  }
+
+  /**.
+   * a full board without a line is a draw
+   */
+  @Test
+  public void testDraw() {
+    // X O X / X O O / O X X
+    int[][] moves = {{0, 0}, {0, 1}, {0, 2}, {1, 2}, {2, 2}, {1, 1}, {2, 1}, {2, 0}, {1, 0}};
+    for (int i = 0; i < moves.length; i++) {
+      assertEquals(false, this.board.isGameDraw());
+      Player player = i % 2 == 0 ? this.p1 : this.p2;
+      Move move = new Move(player, moves[i][0], moves[i][1]);
+      assertEquals("", this.board.validMove(move));
+      this.board.makeMovement(move);
+    }
+    assertEquals(true, this.board.isGameDraw());
+    assertEquals(0, this.board.getWinner());
+  }
+
+  /**.
+   * a third piece type is refused without changing the turn
+   */
+  @Test
+  public void testThirdPieceLeavesTurn() {
+    this.board.makeMovement(new Move(this.p1, 0, 0));
+    this.board.makeMovement(new Move(this.p2, 1, 1));
+    Move move = new Move(new Player('Z', 1), 2, 2);
+    assertThrows(IllegalArgumentException.class, () -> this.board.makeMovement(move));
+    assertEquals(1, this.board.getTurn());
+    assertEquals('\u0000', this.board.getPiece(2, 2));
+  }
+
+  /**.
+   * checking the last move gives the same result as a full scan
+   */
+  @Test
+  public void testIncrementalMatchesFullScan() {
+    Random random = new Random(4156);
+    for (int game = 0; game < 500; game++) {
+      this.startGame();
+      while (this.board.getWinner() == 0 && !this.board.isGameDraw()) {
+        Player player = this.board.getTurn() == 1 ? this.p1 : this.p2;
+        Move move = new Move(player, random.nextInt(3), random.nextInt(3));
+        if (!this.board.validMove(move).equals("")) {
+          continue;
+        }
+        this.board.makeMovement(move);
+        int winner = this.board.getWinner();
+        boolean draw = this.board.isGameDraw();
+        this.board.update();
+        assertEquals(this.board.getWinner(), winner);
+        assertEquals(this.board.isGameDraw(), draw);
+      }
+    }
+  }
+
+  /**.
+   * five in a row on a 15x15 board, in every direction
+   */
+  @Test
+  public void testFiveInARowOnLargeBoard() {
+    int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+    for (int[] dir : directions) {
+      GameBoard game = new GameBoard(15, 5);
+      game.setPlayer1(this.p1);
+      game.setPlayer2(this.p2);
+      // played out of order so the last move closes the middle
+      int[] order = {0, 1, 3, 4, 2};
+      for (int i = 0; i < order.length; i++) {
+        assertEquals(0, game.getWinner());
+        Move move = new Move(this.p1, 7 + order[i] * dir[0], 5 + order[i] * dir[1]);
+        assertEquals("", game.validMove(move));
+        game.makeMovement(move);
+        if (i < 4) {
+          // player 2 plays far away
+          game.makeMovement(new Move(this.p2, 14, i));
+        }
+      }
+      assertEquals(1, game.getWinner());
+    }
+  }
+
+  /**.
+   * four in a row is not enough to win five in a row
+   */
+  @Test
+  public void testFourIsNotFive() {
+    GameBoard game = new GameBoard(100, 5);
+    game.setPlayer1(this.p1);
+    for (int col = 95; col < 99; col++) {
+      game.setPiece(99, col, 'X');
+      game.update();
+    }
+    assertEquals(0, game.getWinner());
+    assertEquals("This cell is not on the board", game.validMove(new Move(this.p1, 100, 0)));
+    game.setPiece(99, 99, 'X');
+    game.update();
+    assertEquals(1, game.getWinner());
+  }
+
+  /**.
+   * a small board with a shorter line uses the window table
+   */
+  @Test
+  public void testSmallBoardWindows() {
+    GameBoard game = new GameBoard(5, 4);
+    game.setPlayer1(this.p1);
+    game.setPlayer2(this.p2);
+    int[][] cells = {{4, 1}, {3, 2}, {2, 3}, {1, 4}};
+    for (int[] cell : cells) {
+      assertEquals(0, game.getWinner());
+      game.makeMovement(new Move(this.p2, cell[0], cell[1]));
+    }
+    assertEquals(2, game.getWinner());
+  }
+
+  /**.
+   * occupied and off-board cells are rejected
+   */
+  @Test
+  public void testInvalidCells() {
+    this.board.makeMovement(new Move(this.p1, 1, 1));
+    assertEquals("This cell has been occupied", this.board.validMove(new Move(this.p2, 1, 1)));
+    assertEquals("This cell is not on the board", this.board.validMove(new Move(this.p2, 3, 0)));
+    assertEquals("Not your turn!", this.board.validMove(new Move(this.p1, 0, 0)));
+  }
+
+  /**.
+   * the JSON keeps the shape of the char[][] board
+   */
+  @Test
+  public void testJsonShape() {
+    this.board.makeMovement(new Move(this.p1, 0, 1));
+    String expected = "{\"p1\":{\"type\":\"X\",\"id\":1},\"p2\":{\"type\":\"O\",\"id\":2},"
+        + "\"gameStarted\":true,\"turn\":2,\"boardState\":"
+        + "[[\"\\u0000\",\"X\",\"\\u0000\"],[\"\\u0000\",\"\\u0000\",\"\\u0000\"],"
+        + "[\"\\u0000\",\"\\u0000\",\"\\u0000\"]],\"winner\":0,\"isDraw\":false}";
+    assertEquals(expected, new Gson().toJson(this.board));
+
+    GameBoard read = new Gson().fromJson(expected, GameBoard.class);
+    assertEquals('X', read.getPiece(0, 1));
+    assertEquals('\u0000', read.getPiece(0, 0));
+    assertEquals('O', read.getP2().getType());
+    assertEquals(true, read.getGameStatus());
+    assertEquals(2, read.getTurn());
+    assertEquals(expected, new Gson().toJson(read));
+  }
+
+  /**.
+   * larger boards carry their shape in the JSON
+   */
+  @Test
+  public void testLargeBoardJson() {
+    GameBoard game = new GameBoard(15, 5);
+    game.setPlayer1(this.p1);
+    game.makeMovement(new Move(this.p1, 12, 10));
+    GameBoard read = new Gson().fromJson(new Gson().toJson(game), GameBoard.class);
+    assertEquals(15, read.getSize());
+    assertEquals(5, read.getWinLength());
+    assertEquals('X', read.getPiece(12, 10));
+    assertEquals(1, read.getPieceCount());
+  }
+
+  /**.
+   * the snapshot is the same JSON Gson produces
+   */
+  @Test
+  public void testSnapshotMatchesGson() {
+    this.board.makeMovement(new Move(this.p1, 0, 2));
+    String json = new Gson().toJson(this.board);
+    assertEquals(json, this.board.snapshot().getJson());
+    assertEquals(json, new String(this.board.snapshot().getBytes(), StandardCharsets.UTF_8));
+  }
+
+  /**.
+   * the binary form of a board reads back to the same JSON,
+   * in four bytes for a 3x3 board
+   */
+  @Test
+  public void testBinaryRoundTrip() {
+    this.board.makeMovement(new Move(this.p1, 0, 2));
+    this.board.makeMovement(new Move(this.p2, 2, 1));
+    byte[] packed = BinaryBoard.encode(this.board);
+    assertEquals(BinaryBoard.PACKED_LENGTH, packed.length);
+    assertEquals(new Gson().toJson(this.board), new Gson().toJson(BinaryBoard.decode(packed)));
+
+    GameBoard game = new GameBoard(15, 5);
+    Player first = new Player('O', 1);
+    game.setPlayer1(first);
+    game.makeMovement(new Move(first, 14, 14));
+    assertEquals(new Gson().toJson(game),
+        new Gson().toJson(BinaryBoard.decode(BinaryBoard.encode(game))));
+  }
+
+  /**.
+   * pieces other than X and O have no binary form
+   */
+  @Test
+  public void testBinaryNeedsXo() {
+    this.board.setPlayer1(new Player('A', 1));
+    assertEquals(null, BinaryBoard.encode(this.board));
+  }
+}
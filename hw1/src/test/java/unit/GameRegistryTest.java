@@ -0,0 +1,220 @@
+package unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import controllers.GameRegistry;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import models.GameBoard;
+import models.Move;
+import models.Player;
+import org.junit.jupiter.api.Test;
+import utils.GameStore;
+
+public class GameRegistryTest {
+
+  /** Store whose games hold one piece, blocking the recovery of "slow". */
+  private static class SlowStore implements GameStore {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final AtomicInteger recovered = new AtomicInteger();
+
+    private final AtomicInteger snapshots = new AtomicInteger();
+
+    // recover, clearGame and snapshot fail while set
+    private volatile boolean failing = false;
+
+    @Override
+    public void createTable() {
+    }
+
+    @Override
+    public void clearGame(String gameId) {
+      if (this.failing) {
+        throw new IllegalStateException("Store failed");
+      }
+    }
+
+    @Override
+    public void addMove(String gameId, Move move) {
+    }
+
+    @Override
+    public void addPlayers(String gameId, Player player, int boardSize, int winLength) {
+    }
+
+    @Override
+    public void recover(String gameId, GameBoard board) {
+      if (this.failing) {
+        throw new IllegalStateException("Store failed");
+      }
+      if (gameId.equals("slow")) {
+        try {
+          this.release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      board.setPlayer1(new Player('X', 1));
+      board.setPiece(0, 0, 'X');
+      this.recovered.incrementAndGet();
+    }
+
+    @Override
+    public void snapshot(String gameId, GameBoard board) {
+      if (this.failing) {
+        throw new IllegalStateException("Store failed");
+      }
+      this.snapshots.incrementAndGet();
+    }
+
+    @Override
+    public Set<String> gameIds() {
+      return new HashSet<>(Arrays.asList("slow", "fast"));
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  /**.
+   * a game recovered in the background does not wait for the others,
+   * and is recovered once
+   */
+  @Test
+  public void testPreloadWaitsPerGame() throws Exception {
+    SlowStore store = new SlowStore();
+    GameRegistry registry = new GameRegistry(store);
+    registry.preload(store.gameIds());
+
+    GameRegistry.Entry fast = registry.open("fast");
+    assertEquals('X', fast.getBoard().getPiece(0, 0));
+    fast.unlock();
+
+    Thread opener = new Thread(() -> registry.open("slow").unlock());
+    opener.start();
+    opener.join(200);
+    assertEquals(true, opener.isAlive());
+
+    store.release.countDown();
+    opener.join(TimeUnit.SECONDS.toMillis(5));
+    assertEquals(false, opener.isAlive());
+    GameRegistry.Entry slow = registry.open("slow");
+    assertEquals(1, slow.getBoard().getPieceCount());
+    slow.unlock();
+    assertEquals(2, store.recovered.get());
+    registry.shutdown();
+  }
+
+  /**.
+   * past its capacity the registry evicts the least recently used
+   * games after a snapshot, and loads them again on demand
+   */
+  @Test
+  public void testLeastRecentlyUsedEvicted() throws Exception {
+    SlowStore store = new SlowStore();
+    GameRegistry registry = new GameRegistry(store, GameRegistry.DEFAULT_IDLE_MILLIS,
+        GameRegistry.DEFAULT_FINISHED_MILLIS, 10);
+    for (int i = 0; i < 10; i++) {
+      registry.open("game" + i).unlock();
+      TimeUnit.MILLISECONDS.sleep(2);
+    }
+    // game0 is used again, game1 becomes the oldest
+    registry.open("game0").unlock();
+    registry.open("game10").unlock();
+    for (int i = 0; i < 100 && registry.size() > 9; i++) {
+      TimeUnit.MILLISECONDS.sleep(20);
+    }
+    assertEquals(9, registry.size());
+    assertEquals(2, store.snapshots.get());
+    assertEquals(11, store.recovered.get());
+
+    // game0 stayed, game1 is loaded again
+    registry.open("game0").unlock();
+    assertEquals(11, store.recovered.get());
+    registry.open("game1").unlock();
+    assertEquals(12, store.recovered.get());
+    registry.shutdown();
+  }
+
+  /**.
+   * a game whose recovery or reset fails is left unlocked; a failed
+   * recovery is tried again by the next open
+   */
+  @Test
+  public void testFailedStoreReleasesLock() throws Exception {
+    SlowStore store = new SlowStore();
+    GameRegistry registry = new GameRegistry(store);
+    store.failing = true;
+    assertThrows(IllegalStateException.class, () -> registry.open("broken"));
+
+    store.failing = false;
+    Thread opener = new Thread(() -> registry.open("broken").unlock());
+    opener.start();
+    opener.join(TimeUnit.SECONDS.toMillis(5));
+    assertEquals(false, opener.isAlive());
+    GameRegistry.Entry broken = registry.open("broken");
+    assertEquals(1, broken.getBoard().getPieceCount());
+    broken.unlock();
+
+    // a failed reset leaves the game unlocked and untouched
+    store.failing = true;
+    assertThrows(IllegalStateException.class, () -> registry.reset("broken"));
+    opener = new Thread(() -> registry.open("broken").unlock());
+    opener.start();
+    opener.join(TimeUnit.SECONDS.toMillis(5));
+    assertEquals(false, opener.isAlive());
+    broken = registry.open("broken");
+    assertEquals(1, broken.getBoard().getPieceCount());
+    broken.unlock();
+    registry.shutdown();
+  }
+
+  /**.
+   * a failed snapshot does not stop the snapshots of the other
+   * games, and is taken again at the next round
+   */
+  @Test
+  public void testFailedSnapshotRetried() throws Exception {
+    SlowStore store = new SlowStore();
+    GameRegistry registry = new GameRegistry(store);
+    registry.open("first").unlock();
+    registry.open("second").unlock();
+    store.failing = true;
+    registry.snapshotAll();
+    assertEquals(0, store.snapshots.get());
+
+    store.failing = false;
+    registry.snapshotAll();
+    assertEquals(2, store.snapshots.get());
+    registry.shutdown();
+  }
+
+  /**.
+   * a change is encoded by the first read after it, once,
+   * and not at all if nobody reads the game
+   */
+  @Test
+  public void testReadEncodesLazily() {
+    SlowStore store = new SlowStore();
+    GameRegistry registry = new GameRegistry(store);
+    GameRegistry.Entry entry = registry.open("lazy");
+    GameBoard board = entry.getBoard();
+    board.setPiece(1, 1, 'O');
+    entry.unlock();
+    assertEquals(false, board.hasSnapshot());
+
+    GameBoard.Snapshot read = registry.read("lazy");
+    assertEquals(board.getVersion(), read.getVersion());
+    assertSame(read, registry.read("lazy"));
+    registry.shutdown();
+  }
+}
@@ -0,0 +1,55 @@
+package unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.google.gson.Gson;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import models.GameBoard;
+import models.JsonCodec;
+import models.Message;
+import models.Move;
+import models.Player;
+import org.junit.jupiter.api.Test;
+
+public class JsonCodecTest {
+
+  private final Gson gson = new Gson();
+
+  /**.
+   * boards are written as Gson writes them, escapes included
+   */
+  @Test
+  public void testBoardMatchesGson() throws IOException {
+    GameBoard board = new GameBoard(15, 5);
+    Player p1 = new Player('<', 1);
+    board.setPlayer1(p1);
+    board.setPlayer2(new Player('\u00e9', 2));
+    board.makeMovement(new Move(p1, 3, 14));
+    board.setPiece(7, 7, '"');
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    JsonCodec.writeBoard(board, out);
+    assertEquals(this.gson.toJson(board), out.toString(StandardCharsets.UTF_8));
+  }
+
+  /**.
+   * messages and moves are written as Gson writes them
+   */
+  @Test
+  public void testMessageAndMoveMatchGson() throws IOException {
+    Message[] messages = {new Message(true, 100, ""),
+        new Message(false, -7, "Can't move\n" + (char) 0x2028 + " \ud83d\ude00"),
+        new Message(false, 100, null)};
+    for (Message message : messages) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      JsonCodec.writeMessage(message, out);
+      assertEquals(this.gson.toJson(message), out.toString(StandardCharsets.UTF_8));
+    }
+
+    Move move = new Move(new Player('X', 2), 12, Integer.MIN_VALUE);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    JsonCodec.writeMove(move, out);
+    assertEquals(this.gson.toJson(move), out.toString(StandardCharsets.UTF_8));
+  }
+}
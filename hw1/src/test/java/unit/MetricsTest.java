@@ -0,0 +1,57 @@
+package unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import utils.Metrics;
+
+public class MetricsTest {
+
+  /**.
+   * Durations land in cumulative buckets, sum in seconds
+   */
+  @Test
+  public void testTimer() {
+    Metrics metrics = new Metrics();
+    Metrics.Timer timer = metrics.timer("test_seconds", "Time of a test.");
+    timer.record(TimeUnit.MICROSECONDS.toNanos(20));
+    timer.record(TimeUnit.MILLISECONDS.toNanos(1));
+    timer.record(TimeUnit.SECONDS.toNanos(3));
+    assertEquals(3, timer.count());
+    assertEquals(timer, metrics.timer("test_seconds", "Time of a test."));
+
+    String scrape = metrics.scrape();
+    assertTrue(scrape.startsWith("# HELP test_seconds Time of a test.\n"
+        + "# TYPE test_seconds histogram\n"
+        + "test_seconds_bucket{le=\"0.00001\"} 0\n"
+        + "test_seconds_bucket{le=\"0.000025\"} 1\n"));
+    // a bound is inclusive
+    assertTrue(scrape.contains("test_seconds_bucket{le=\"0.001\"} 2\n"));
+    assertTrue(scrape.contains("test_seconds_bucket{le=\"2.5\"} 2\n"));
+    assertTrue(scrape.contains("test_seconds_bucket{le=\"+Inf\"} 3\n"));
+    assertTrue(scrape.contains("test_seconds_sum 3.00102\n"));
+    assertTrue(scrape.endsWith("test_seconds_count 3\n"));
+  }
+
+  /**.
+   * Gauges and counters are read on every scrape, sorted by name
+   */
+  @Test
+  public void testSampled() {
+    Metrics metrics = new Metrics();
+    long[] value = {4};
+    metrics.gauge("b_games", "Games.", () -> value[0]);
+    metrics.counter("a_dropped_total", "Dropped.", () -> 7);
+    value[0] = 5;
+    assertEquals("# HELP a_dropped_total Dropped.\n"
+        + "# TYPE a_dropped_total counter\n"
+        + "a_dropped_total 7\n"
+        + "# HELP b_games Games.\n"
+        + "# TYPE b_games gauge\n"
+        + "b_games 5\n", metrics.scrape());
+    assertThrows(IllegalArgumentException.class, () -> metrics.timer("b_games", "Games."));
+  }
+}
@@ -0,0 +1,52 @@
+package unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import controllers.MoveForm;
+import io.javalin.http.BadRequestResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+public class MoveFormTest {
+
+  private static MoveForm read(String body) throws IOException {
+    return MoveForm.read(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**.
+   * coordinates of any length are read, other keys are skipped,
+   * and the form is reused by the thread
+   */
+  @Test
+  public void testReadCoordinates() throws IOException {
+    MoveForm form = read("x=12&y=107");
+    assertEquals(12, form.getX());
+    assertEquals(107, form.getY());
+
+    MoveForm again = read("xy=5&y=+3+&x=-1&x=4");
+    assertSame(form, again);
+    assertEquals(-1, again.getX());
+    assertEquals(3, again.getY());
+
+    MoveForm missing = read("y=0");
+    assertEquals(MoveForm.MISSING, missing.getX());
+    assertEquals(0, missing.getY());
+  }
+
+  /**.
+   * values that are not integers are bad requests
+   */
+  @Test
+  public void testRejectInvalid() {
+    assertThrows(BadRequestResponse.class, () -> read("x=1a&y=1"));
+    assertThrows(BadRequestResponse.class, () -> read("x=1&y="));
+    assertThrows(BadRequestResponse.class, () -> read("x=1 2&y=1"));
+    assertThrows(BadRequestResponse.class, () -> read("x=1234567890&y=1"));
+    assertThrows(BadRequestResponse.class, () -> MoveForm.parseInt("1x", "player"));
+    assertEquals(2, MoveForm.parseInt("2", "player"));
+  }
+}
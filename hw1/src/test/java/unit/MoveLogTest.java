@@ -0,0 +1,144 @@
+package unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import models.GameBoard;
+import models.Move;
+import models.Player;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import utils.MoveLog;
+
+public class MoveLogTest {
+
+  @TempDir
+  Path dir;
+
+  private final Player p1 = new Player('X', 1);
+
+  private final Player p2 = new Player('O', 2);
+
+  /**.
+   * a game is replayed from the file after a restart
+   */
+  @Test
+  public void testRecoverAfterReopen() {
+    Path path = this.dir.resolve("moves.log");
+    MoveLog log = new MoveLog(path, true);
+    log.addPlayers("a", this.p1, 3, 3);
+    log.addPlayers("a", this.p2, 3, 3);
+    int[][] cells = {{0, 0}, {1, 1}, {0, 1}, {2, 2}, {0, 2}};
+    for (int i = 0; i < cells.length; i++) {
+      log.addMove("a", new Move(i % 2 == 0 ? this.p1 : this.p2, cells[i][0], cells[i][1]));
+    }
+    log.close();
+
+    MoveLog reopened = new MoveLog(path, true);
+    GameBoard board = new GameBoard();
+    reopened.recover("a", board);
+    assertEquals(5, board.getPieceCount());
+    assertEquals('X', board.getPiece(0, 2));
+    assertEquals(1, board.getWinner());
+    assertEquals(true, board.getGameStatus());
+    reopened.close();
+  }
+
+  /**.
+   * a reset game starts empty, the other games keep their moves
+   */
+  @Test
+  public void testClearGame() {
+    MoveLog log = new MoveLog(this.dir.resolve("moves.log"), false);
+    log.addPlayers("a", this.p1, 15, 5);
+    log.addPlayers("b", this.p1, 3, 3);
+    log.addMove("a", new Move(this.p1, 7, 7));
+    log.addMove("b", new Move(this.p1, 1, 1));
+    log.clearGame("b");
+
+    GameBoard a = new GameBoard();
+    log.recover("a", a);
+    assertEquals(15, a.getSize());
+    assertEquals('X', a.getPiece(7, 7));
+    assertEquals(2, a.getTurn());
+
+    GameBoard b = new GameBoard();
+    log.recover("b", b);
+    assertEquals(0, b.getPieceCount());
+    assertEquals(null, b.getP1());
+    log.close();
+  }
+
+  /**.
+   * a record torn by a crash is dropped and overwritten
+   */
+  @Test
+  public void testTornRecordDropped() throws Exception {
+    Path path = this.dir.resolve("moves.log");
+    MoveLog log = new MoveLog(path, true);
+    log.addPlayers("a", this.p1, 3, 3);
+    log.addPlayers("a", this.p2, 3, 3);
+    log.addMove("a", new Move(this.p1, 0, 0));
+    log.addMove("a", new Move(this.p2, 1, 1));
+    int size = log.size();
+    log.close();
+
+    try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+      // flip a byte of the row of the last move
+      file.seek(size - 30);
+      file.write(file.read() ^ 0xff);
+    }
+
+    MoveLog reopened = new MoveLog(path, true);
+    assertEquals(size - 96, reopened.size());
+    GameBoard board = new GameBoard();
+    reopened.recover("a", board);
+    assertEquals(1, board.getPieceCount());
+    assertEquals(2, board.getTurn());
+
+    reopened.addMove("a", new Move(this.p2, 2, 2));
+    reopened.close();
+    board = new GameBoard();
+    new MoveLog(path, true).recover("a", board);
+    assertEquals('O', board.getPiece(2, 2));
+    assertEquals('\u0000', board.getPiece(1, 1));
+  }
+
+  /**.
+   * records of reset games are compacted away when the log is out
+   * of room, and a log of live records only is full
+   */
+  @Test
+  public void testCompaction() {
+    Path path = this.dir.resolve("moves.log");
+    // room for eight records
+    MoveLog log = new MoveLog(path, true, 8 * 96);
+    log.addPlayers("b", this.p1, 3, 3);
+    for (int round = 0; round < 10; round++) {
+      log.clearGame("a");
+      log.addPlayers("a", this.p1, 3, 3);
+      log.addMove("a", new Move(this.p1, round % 3, round / 3 % 3));
+    }
+    assertTrue(log.size() <= 8 * 96);
+    log.close();
+
+    MoveLog reopened = new MoveLog(path, true, 8 * 96);
+    GameBoard a = new GameBoard();
+    reopened.recover("a", a);
+    assertEquals(1, a.getPieceCount());
+    assertEquals('X', a.getPiece(0, 0));
+    GameBoard b = new GameBoard();
+    reopened.recover("b", b);
+    assertEquals('X', b.getP1().getType());
+
+    for (int i = 0; i < 5; i++) {
+      reopened.addMove("b", new Move(this.p1, i % 3, i / 3));
+    }
+    assertThrows(IllegalStateException.class,
+        () -> reopened.addMove("b", new Move(this.p1, 2, 2)));
+    reopened.close();
+  }
+}
@@ -0,0 +1,94 @@
+package unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import controllers.SessionOutbox;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SessionOutboxTest {
+
+  private List<String> sent;
+
+  private boolean failWrites;
+
+  private SessionOutbox outbox;
+
+  /**.
+   * a session whose writes never complete by themselves
+   */
+  @BeforeEach
+  public void createOutbox() {
+    this.sent = new ArrayList<>();
+    this.failWrites = false;
+    RemoteEndpoint remote = (RemoteEndpoint) Proxy.newProxyInstance(
+        getClass().getClassLoader(), new Class<?>[] {RemoteEndpoint.class},
+        (proxy, method, args) -> {
+          if (this.failWrites) {
+            throw new IllegalStateException("closed");
+          }
+          this.sent.add((String) args[0]);
+          return null;
+        });
+    Session session = (Session) Proxy.newProxyInstance(
+        getClass().getClassLoader(), new Class<?>[] {Session.class},
+        (proxy, method, args) -> remote);
+    this.outbox = new SessionOutbox(session, "default");
+  }
+
+  /**.
+   * only one write is in flight, the rest wait in the queue
+   */
+  @Test
+  public void testOneWriteAtATime() {
+    this.outbox.offer("1");
+    this.outbox.offer("2");
+    assertEquals(List.of("1"), this.sent);
+
+    this.outbox.writeSuccess();
+    assertEquals(List.of("1", "2"), this.sent);
+  }
+
+  /**.
+   * a slow session drops its oldest messages and is counted as lagging
+   */
+  @Test
+  public void testSlowSessionDropsOldest() {
+    long dropped = SessionOutbox.droppedMessages();
+    int lagging = SessionOutbox.laggingSessions();
+
+    // the first message is in flight, then the queue fills up
+    int total = SessionOutbox.DEFAULT_CAPACITY + 4;
+    for (int i = 1; i <= total; i++) {
+      this.outbox.offer(String.valueOf(i));
+    }
+    assertEquals(dropped + 3, SessionOutbox.droppedMessages());
+    assertEquals(lagging + 1, SessionOutbox.laggingSessions());
+
+    // messages 2, 3 and 4 were dropped
+    this.outbox.writeSuccess();
+    assertEquals("5", this.sent.get(1));
+    for (int i = 0; i < SessionOutbox.DEFAULT_CAPACITY; i++) {
+      this.outbox.writeSuccess();
+    }
+    assertEquals(String.valueOf(total), this.sent.get(this.sent.size() - 1));
+    assertEquals(lagging, SessionOutbox.laggingSessions());
+  }
+
+  /**.
+   * a failed write closes the outbox
+   */
+  @Test
+  public void testFailedWriteStopsSending() {
+    this.failWrites = true;
+    this.outbox.offer("1");
+    this.failWrites = false;
+    this.outbox.offer("2");
+    assertEquals(0, this.sent.size());
+  }
+}